@@ -0,0 +1,41 @@
+package io.github.qsolutionsde.jfhem;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * FHEM output for the benchmarks: {@code inform.txt} as sent by {@code inform on} over telnet and
+ * {@code jsonlist2.json} as returned by FHEMWEB.
+ */
+public final class Fixtures {
+    private Fixtures() {}
+
+    public static List<String> lines(String name) {
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(open(name), StandardCharsets.UTF_8))) {
+            return r.lines().filter(l -> !l.isEmpty()).collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static byte[] bytes(String name) {
+        try (InputStream in = open(name)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static InputStream open(String name) {
+        InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name);
+        if (in == null)
+            throw new IllegalArgumentException("No fixture " + name);
+        return in;
+    }
+}
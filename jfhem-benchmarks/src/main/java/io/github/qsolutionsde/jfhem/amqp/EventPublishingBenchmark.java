@@ -0,0 +1,79 @@
+package io.github.qsolutionsde.jfhem.amqp;
+
+import io.github.qsolutionsde.jfhem.data.TimestampFormat;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * {@link AMQPEventPublisher#event} including the outbox, against a {@link RabbitTemplate} that discards messages.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventPublishingBenchmark {
+
+    @Param({ "SECONDS", "EPOCH_MILLIS" })
+    public TimestampFormat format;
+
+    @Param({ "false", "true" })
+    public boolean envelope;
+
+    private Path directory;
+    private AMQPOutbox outbox;
+    private AMQPEventPublisher publisher;
+    private final DiscardingRabbitTemplate rabbit = new DiscardingRabbitTemplate();
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("outbox");
+        OutboxConfig c = new OutboxConfig();
+        c.setDirectory(directory.toString());
+        c.setMemoryCapacity(1_000_000);
+        outbox = new AMQPOutbox(rabbit, c, new SimpleMeterRegistry());
+        EnvelopeConfig e = new EnvelopeConfig();
+        e.setEnabled(envelope);
+        publisher = new AMQPEventPublisher(outbox, Collections.emptyList(), format, e, new SimpleMeterRegistry());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        publisher.close();
+        outbox.close();
+        try (Stream<Path> s = Files.walk(directory)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void event() {
+        publisher.event("fhem.local", "CUL_HM", "HM_Thermostat_Living", "measured-temp", "21.5");
+    }
+
+    static class DiscardingRabbitTemplate extends RabbitTemplate {
+        final LongAdder sent = new LongAdder();
+
+        @Override
+        public <T> T invoke(OperationsCallback<T> action) {
+            return action.doInRabbit(this);
+        }
+
+        @Override
+        public void send(String routingKey, Message message) {
+            sent.increment();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package io.github.qsolutionsde.jfhem.cluster;
+
+import io.github.qsolutionsde.jfhem.simulator.FHEMSimulator;
+import io.github.qsolutionsde.jfhem.simulator.SimulatorConfig;
+import io.github.qsolutionsde.jfhem.telnet.FHEMTelnetConfig;
+import io.github.qsolutionsde.jfhem.telnet.FHEMTelnetConnection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs gateway instances sharing FHEM hosts in one JVM: {@link ShardManager}s and telnet connections of every
+ * instance against {@link FHEMSimulator}s on 127.0.0.1, 127.0.0.2, ... and an {@link InProcessShardBroker}.
+ *
+ * Checks that every host is owned, received from and commanded by exactly one instance, then that the shards
+ * fail over when an instance stops and when one loses the broker. Exits with 1 if a check fails.
+ */
+public class ClusterTest {
+    protected static final int INSTANCES = 3;
+    protected static final int HOSTS = 4;
+
+    protected final InProcessShardBroker broker = new InProcessShardBroker();
+    protected final ClusterConfig config = new ClusterConfig();
+    protected final List<FHEMSimulator> simulators = new ArrayList<>();
+    protected final List<String> hosts = new ArrayList<>();
+    protected final List<Instance> instances = new ArrayList<>();
+    protected boolean failed = false;
+
+    public static void main(String[] args) throws Exception {
+        final ClusterTest t = new ClusterTest();
+        try {
+            t.run();
+        } finally {
+            t.close();
+        }
+        System.out.println(t.failed ? "FAILED" : "PASSED");
+        System.exit(t.failed ? 1 : 0);
+    }
+
+    public void run() throws Exception {
+        config.setEnabled(true);
+        config.setHeartbeatInterval(Duration.ofMillis(100));
+        config.setLeaseTimeout(Duration.ofMillis(500));
+        config.setTakeoverResync(Duration.ofSeconds(5));
+
+        for (int i = 0; i < HOSTS; i++) {
+            final SimulatorConfig s = new SimulatorConfig();
+            s.setDevices(20);
+            s.setEventRate(200);
+            s.setSeed(i);
+            simulators.add(new FHEMSimulator(s));
+            hosts.add("127.0.0." + (i + 1));
+        }
+        final List<List<String>> shards = ShardManager.assign(hosts, config.getShards());
+        for (int s = 0; s < shards.size(); s++)
+            broker.bind(ShardManager.queue(config, s), ShardManager.routingKeys("fhem", shards.get(s)));
+
+        for (int i = 0; i < INSTANCES; i++)
+            instances.add(new Instance("gateway-" + i));
+        instances.forEach(Instance::start);
+
+        Thread.sleep(2000);
+        check("all instances");
+
+        final Instance stopped = owner(hosts.get(0));
+        System.out.println("Stopping " + stopped.name);
+        stopped.close();
+        instances.remove(stopped);
+        Thread.sleep(2000);
+        check("after stopping " + stopped.name);
+
+        final Instance partitioned = owner(hosts.get(0));
+        System.out.println("Partitioning " + partitioned.name);
+        partitioned.client.setConnected(false);
+        Thread.sleep(2000);
+        instances.remove(partitioned);
+        check("after partitioning " + partitioned.name);
+        if (!partitioned.manager.getOwnedShards().isEmpty())
+            fail(partitioned.name + " still owns " + partitioned.manager.getOwnedShards());
+        partitioned.close();
+    }
+
+    protected Instance owner(String host) {
+        for (Instance i : instances)
+            if (i.manager.isOwned(host))
+                return i;
+        throw new IllegalStateException("No owner of " + host);
+    }
+
+    protected void check(String phase) throws InterruptedException {
+        instances.forEach(Instance::reset);
+        for (String h : hosts)
+            broker.publish("fhem." + h + ".set.dev.state", "on");
+        Thread.sleep(1000);
+
+        System.out.println(phase + ":");
+        for (String h : hosts) {
+            final List<String> owners = new ArrayList<>();
+            final List<String> receivers = new ArrayList<>();
+            final List<String> commanded = new ArrayList<>();
+            for (Instance i : instances) {
+                if (i.manager.isOwned(h))
+                    owners.add(i.name);
+                if (i.events.containsKey(h))
+                    receivers.add(i.name);
+                if (i.commands.contains(h))
+                    commanded.add(i.name);
+            }
+            System.out.printf("  %-10s owned by %s, events at %s, commands at %s%n", h, owners, receivers, commanded);
+            if (owners.size() != 1 || !owners.equals(receivers) || !owners.equals(commanded))
+                fail(h + " not handled by exactly one instance");
+        }
+    }
+
+    protected void fail(String message) {
+        System.out.println("  FAILED: " + message);
+        failed = true;
+    }
+
+    public void close() throws IOException {
+        instances.forEach(Instance::close);
+        for (FHEMSimulator s : simulators)
+            s.close();
+    }
+
+    protected class Instance {
+        protected final String name;
+        protected final InProcessShardBroker.Client client;
+        protected final Map<String, FHEMTelnetConnection> connections = new HashMap<>();
+        protected final ShardManager manager;
+        protected final Map<String, LongAdder> events = new ConcurrentHashMap<>();
+        protected final Set<String> commands = ConcurrentHashMap.newKeySet();
+
+        protected Instance(String name) {
+            this.name = name;
+            client = broker.client(name);
+            final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            for (int i = 0; i < HOSTS; i++) {
+                final FHEMTelnetConfig.FHEMTelnetHostConfig h =
+                        new FHEMTelnetConfig.FHEMTelnetHostConfig().host(hosts.get(i)).port(simulators.get(i).getTelnetPort());
+                h.setReconnectDelay(100);
+                final FHEMTelnetConnection c = new FHEMTelnetConnection(h, registry, false);
+                c.addListener((host, deviceType, device, reading, value) ->
+                        events.computeIfAbsent(host, x -> new LongAdder()).increment());
+                connections.put(hosts.get(i), c);
+            }
+            final ClusterConfig c = new ClusterConfig();
+            c.setHeartbeatInterval(config.getHeartbeatInterval());
+            c.setLeaseTimeout(config.getLeaseTimeout());
+            c.setTakeoverResync(config.getTakeoverResync());
+            c.setInstance(name);
+            manager = new ShardManager(c, hosts, client,
+                    (key, payload) -> commands.add(key.split("\\.", 2)[1].replaceAll("\\.set\\..*", "")),
+                    new ShardManager.Listener() {
+                        @Override
+                        public void claimed(int shard, List<String> hs, long since) {
+                            hs.forEach(h -> connections.get(h).start(since));
+                        }
+
+                        @Override
+                        public void released(int shard, List<String> hs) {
+                            hs.forEach(h -> connections.get(h).stop());
+                        }
+                    },
+                    registry);
+        }
+
+        protected void start() {
+            manager.start();
+        }
+
+        protected void reset() {
+            events.clear();
+            commands.clear();
+        }
+
+        protected void close() {
+            manager.close();
+            connections.values().forEach(FHEMTelnetConnection::close);
+        }
+    }
+}
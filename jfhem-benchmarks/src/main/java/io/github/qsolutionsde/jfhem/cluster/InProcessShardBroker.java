@@ -0,0 +1,161 @@
+package io.github.qsolutionsde.jfhem.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Stand-in for the single active consumer queues of RabbitMQ in one JVM: every queue delivers its messages, one
+ * at a time, to the first of its consumers. Each gateway instance gets its own {@link Client}, which can lose the
+ * broker like a network partition.
+ */
+@Slf4j
+public class InProcessShardBroker {
+    protected final Map<String, Queue> queues = new HashMap<>();
+
+    /** Binds a queue to routing keys of the topic exchange, {@code *} matches a word, {@code #} any words. */
+    public synchronized void bind(String queue, List<String> routingKeys) {
+        queue(queue).bindings.addAll(routingKeys);
+    }
+
+    /** Publishes to the topic exchange. */
+    public synchronized void publish(String routingKey, String payload) {
+        for (Queue q : queues.values())
+            for (String b : q.bindings)
+                if (matches(b.split("\\."), 0, routingKey.split("\\."), 0)) {
+                    q.offer(routingKey, payload, Long.MAX_VALUE);
+                    break;
+                }
+    }
+
+    protected static boolean matches(String[] binding, int i, String[] key, int j) {
+        if (i == binding.length)
+            return j == key.length;
+        if ("#".equals(binding[i])) {
+            for (int k = j; k <= key.length; k++)
+                if (matches(binding, i + 1, key, k))
+                    return true;
+            return false;
+        }
+        return j < key.length && ("*".equals(binding[i]) || binding[i].equals(key[j]))
+                && matches(binding, i + 1, key, j + 1);
+    }
+
+    protected Queue queue(String name) {
+        return queues.computeIfAbsent(name, Queue::new);
+    }
+
+    public Client client(String name) {
+        return new Client(name);
+    }
+
+    public class Client implements ShardBroker {
+        protected final String name;
+        protected final List<Registration> registrations = new ArrayList<>();
+        protected volatile boolean connected = true;
+
+        protected Client(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Consumer consume(String queue, Handler handler) {
+            final Registration r;
+            synchronized (InProcessShardBroker.this) {
+                r = new Registration(queue(queue), handler);
+                registrations.add(r);
+                if (connected)
+                    r.queue.add(r);
+            }
+            return () -> {
+                synchronized (InProcessShardBroker.this) {
+                    registrations.remove(r);
+                    r.queue.remove(r);
+                }
+            };
+        }
+
+        @Override
+        public void send(String queue, String payload, long ttlMillis) {
+            if (!connected)
+                throw new IllegalStateException("Broker unreachable from " + name);
+            synchronized (InProcessShardBroker.this) {
+                queue(queue).offer(queue, payload, System.nanoTime() + ttlMillis * 1_000_000);
+            }
+        }
+
+        /** Loses or regains the broker, consumers are cancelled and registered again. */
+        public void setConnected(boolean c) {
+            synchronized (InProcessShardBroker.this) {
+                if (connected == c)
+                    return;
+                connected = c;
+                for (Registration r : registrations)
+                    if (c)
+                        r.queue.add(r);
+                    else
+                        r.queue.remove(r);
+            }
+            log.info("Client {} {} the broker", name, c ? "reconnected to" : "lost");
+        }
+    }
+
+    protected static class Registration {
+        protected final Queue queue;
+        protected final ShardBroker.Handler handler;
+
+        protected Registration(Queue queue, ShardBroker.Handler handler) {
+            this.queue = queue;
+            this.handler = handler;
+        }
+    }
+
+    // all methods called holding the broker monitor
+    protected static class Queue {
+        protected final String name;
+        protected final List<String> bindings = new ArrayList<>();
+        protected final List<Registration> consumers = new ArrayList<>();
+        protected final Deque<Object[]> messages = new ArrayDeque<>();
+        protected final ExecutorService delivery;
+
+        protected Queue(String name) {
+            this.name = name;
+            delivery = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "queue-" + name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        protected void add(Registration r) {
+            consumers.add(r);
+            if (consumers.size() == 1)
+                drain();
+        }
+
+        protected void remove(Registration r) {
+            consumers.remove(r);
+            if (!consumers.isEmpty())
+                drain();
+        }
+
+        protected void offer(String routingKey, String payload, long expiry) {
+            messages.add(new Object[] { routingKey, payload, expiry });
+            if (!consumers.isEmpty())
+                drain();
+        }
+
+        // hands the waiting messages to the active consumer
+        protected void drain() {
+            final Registration active = consumers.get(0);
+            for (Object[] m; (m = messages.poll()) != null; ) {
+                if ((Long) m[2] < System.nanoTime())
+                    continue;
+                final Object[] message = m;
+                delivery.execute(() -> active.handler.message((String) message[0], (String) message[1]));
+            }
+        }
+    }
+}
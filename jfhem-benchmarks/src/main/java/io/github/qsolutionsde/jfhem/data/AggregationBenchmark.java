@@ -0,0 +1,87 @@
+package io.github.qsolutionsde.jfhem.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Casts and aggregations of timestamped readings as consumers compute them, e.g. the average temperature of
+ * all rooms from the string values received.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregationBenchmark {
+
+    @Param({ "10", "1000" })
+    public int size;
+
+    private final Duration maxAge = Duration.ofMinutes(30);
+
+    private List<TimestampedValue<String>> strings;
+    private List<TimestampedValue<Double>> doubles;
+    private TimestampedDouble[] primitives;
+
+    @Setup
+    public void setup() {
+        Random r = new Random(42);
+        Instant now = Instant.now();
+        strings = new ArrayList<>(size);
+        doubles = new ArrayList<>(size);
+        primitives = new TimestampedDouble[size];
+        for (int i = 0; i < size; i++) {
+            double d = Math.round((18 + r.nextDouble() * 5) * 10) / 10.0;
+            Instant t = now.minusSeconds(r.nextInt(3600));
+            strings.add(new TimestampedValue<>(d + " °C", t));
+            doubles.add(new TimestampedValue<>(d, t));
+            primitives[i] = new TimestampedDouble(d, t);
+        }
+    }
+
+    @Benchmark
+    public TimestampedValue<Double> castAndAverage() {
+        TimestampedStatistics s = new TimestampedStatistics(maxAge);
+        for (TimestampedValue<String> t : strings)
+            s.accept(t.castToDouble());
+        return s.average();
+    }
+
+    @Benchmark
+    public TimestampedValue<Double> avg() {
+        return TimestampedValue.avg(maxAge, doubles);
+    }
+
+    @Benchmark
+    public TimestampedValue<Double> min() {
+        return TimestampedValue.min(maxAge, doubles);
+    }
+
+    @Benchmark
+    public double statistics() {
+        TimestampedStatistics s = TimestampedStatistics.of(maxAge, doubles);
+        return s.mean() + s.min() + s.max() + s.standardDeviation();
+    }
+
+    @Benchmark
+    public double statisticsPrimitive() {
+        TimestampedStatistics s = TimestampedStatistics.of(maxAge, primitives);
+        return s.mean() + s.min() + s.max() + s.standardDeviation();
+    }
+
+    @Benchmark
+    public int expired() {
+        int n = 0;
+        for (TimestampedValue<Double> t : doubles)
+            if (t.isExpired(maxAge))
+                n++;
+        return n;
+    }
+}
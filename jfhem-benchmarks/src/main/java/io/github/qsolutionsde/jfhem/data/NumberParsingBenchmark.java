@@ -0,0 +1,80 @@
+package io.github.qsolutionsde.jfhem.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of typical FHEM reading values, compared to the former {@link DecimalFormat} and
+ * exception based implementations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumberParsingBenchmark {
+
+    @Param({ "21.5", "21,5", "21.5 °C", "45 %", "1013", "-0.25", "on", "2020-06-28 12:00:00" })
+    public String value;
+
+    private final Instant lastUpdate = Instant.now();
+
+    private TimestampedValue<String> parsed;
+
+    @Setup
+    public void setup() {
+        parsed = new TimestampedValue<>(value, lastUpdate);
+        parsed.castToDouble();
+    }
+
+    @Benchmark
+    public double numberParser() {
+        return NumberParser.parseDouble(value);
+    }
+
+    @Benchmark
+    public Number decimalFormat() {
+        Locale l = value.contains(",") ? Locale.GERMAN : Locale.ENGLISH;
+        try {
+            return new DecimalFormat("#." + "########", DecimalFormatSymbols.getInstance(l)).parse(value);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public Double parseDoubleWithException() {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public TimestampedValue<Double> castToDouble() {
+        return new TimestampedValue<>(value, lastUpdate).castToDouble();
+    }
+
+    @Benchmark
+    public TimestampedValue<Double> castToDoubleMemoized() {
+        return parsed.castToDouble();
+    }
+
+    @Benchmark
+    public TimestampedValue<Long> castToLong() {
+        return new TimestampedValue<>(value, lastUpdate).castToLong();
+    }
+
+    @Benchmark
+    public TimestampedValue from() {
+        return TimestampedValue.from(value, lastUpdate);
+    }
+}
@@ -0,0 +1,120 @@
+package io.github.qsolutionsde.jfhem.data;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and deserialization of a map of readings, as returned by the REST interface, in each
+ * {@link TimestampFormat}, compared to the former tree based deserializer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimestampedValueJsonBenchmark {
+
+    private static final TypeReference<Map<String, TimestampedValue>> READINGS = new TypeReference<>() {};
+
+    @Param({ "SECONDS", "ISO_MILLIS", "EPOCH_MILLIS" })
+    public TimestampFormat format;
+
+    @Param({ "50" })
+    public int readings;
+
+    private ObjectMapper mapper;
+    private ObjectMapper treeMapper;
+
+    private Map<String, TimestampedValue> values;
+    private String json;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = new ObjectMapper().registerModule(new TimestampedValueModule(format));
+
+        SimpleModule tree = new SimpleModule();
+        tree.addDeserializer(TimestampedValue.class, new TreeDeserializer());
+        treeMapper = new ObjectMapper().registerModule(tree);
+
+        values = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < readings; i++) {
+            Instant t = Instant.ofEpochMilli(now - i * 1000L);
+            switch (i % 4) {
+                case 0: values.put("temperature" + i, new TimestampedValue<>(20.0 + i / 10.0, t)); break;
+                case 1: values.put("counter" + i, new TimestampedValue<>((long) i, t)); break;
+                case 2: values.put("switch" + i, new TimestampedValue<>(i % 8 == 2, t)); break;
+                default: values.put("state" + i, new TimestampedValue<>("on", t));
+            }
+        }
+        json = mapper.writeValueAsString(values);
+    }
+
+    @Benchmark
+    public String serialize() throws IOException {
+        return mapper.writeValueAsString(values);
+    }
+
+    @Benchmark
+    public Map<String, TimestampedValue> deserialize() throws IOException {
+        return mapper.readValue(json, READINGS);
+    }
+
+    @Benchmark
+    public Map<String, TimestampedValue> deserializeTree() throws IOException {
+        return treeMapper.readValue(json, READINGS);
+    }
+
+    /**
+     * The former implementation, reading a tree per value.
+     */
+    @SuppressWarnings("rawtypes")
+    static class TreeDeserializer extends StdDeserializer<TimestampedValue> {
+        private final DateTimeFormatter fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+
+        TreeDeserializer() {
+            super(TimestampedValue.class);
+        }
+
+        @Override
+        public TimestampedValue deserialize(JsonParser jp, DeserializationContext ctxt) throws IOException {
+            JsonNode node = jp.getCodec().readTree(jp);
+            JsonNode value = node.get("value");
+            JsonNode instant = node.get("lastUpdate");
+
+            Instant i;
+            try {
+                i = Instant.from(fmt.parse(instant.asText()));
+            } catch (DateTimeException e) {
+                try {
+                    i = Instant.ofEpochMilli(Long.parseLong(instant.asText()));
+                } catch (NumberFormatException f) {
+                    i = Instant.now();
+                }
+            }
+            if (value.isDouble() || value.isFloat())
+                return new TimestampedValue<>(value.asDouble(), i);
+            if (value.isBoolean())
+                return new TimestampedValue<>(value.asBoolean(), i);
+            if (value.isInt() || value.isLong())
+                return new TimestampedValue<>(value.asLong(), i);
+            return new TimestampedValue<>(value.asText(), i);
+        }
+    }
+}
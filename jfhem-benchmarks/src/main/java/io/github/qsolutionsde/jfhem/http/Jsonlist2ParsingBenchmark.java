@@ -0,0 +1,36 @@
+package io.github.qsolutionsde.jfhem.http;
+
+import io.github.qsolutionsde.jfhem.Fixtures;
+import io.github.qsolutionsde.jfhem.data.TimestampedValue;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FHEMHttpConnection#parseJsonlist2} of the {@code jsonlist2.json} fixture, 13 devices with 3 to 7 readings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Jsonlist2ParsingBenchmark {
+
+    private byte[] response;
+    private FHEMHttpConnection connection;
+
+    @Setup
+    public void setup() {
+        response = Fixtures.bytes("jsonlist2.json");
+        connection = new FHEMHttpConnection(new FHEMWebConfig.FHEMHostConfig().url("http://localhost:8083/fhem"));
+    }
+
+    @Benchmark
+    public Map<String, Map<String, TimestampedValue<String>>> parse() throws IOException {
+        return connection.parseJsonlist2(new ByteArrayInputStream(response));
+    }
+}
@@ -0,0 +1,39 @@
+package io.github.qsolutionsde.jfhem.load;
+
+import io.github.qsolutionsde.jfhem.simulator.FHEMSimulator;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stand-in for RabbitMQ accepting every message without a connection. Probe events of the
+ * {@link FHEMSimulator} are recorded as latency from their emission to the publish.
+ */
+public class InProcessBroker extends RabbitTemplate {
+    protected static final String PROBE = "." + FHEMSimulator.PROBE_DEVICE + "." + FHEMSimulator.PROBE_READING;
+
+    protected final LongAdder messages = new LongAdder();
+    protected final Latencies latencies;
+
+    public InProcessBroker(Latencies latencies) {
+        this.latencies = latencies;
+    }
+
+    public long getMessages() {
+        return messages.sum();
+    }
+
+    @Override
+    public <T> T invoke(OperationsCallback<T> action) {
+        return action.doInRabbit(this);
+    }
+
+    @Override
+    public void send(String routingKey, Message message) {
+        messages.increment();
+        if (routingKey.endsWith(PROBE) && !routingKey.startsWith("timestamped."))
+            latencies.record(System.nanoTime() - Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.qsolutionsde.jfhem.load;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Latency samples of one scenario, kept completely so percentiles are exact.
+ */
+public class Latencies {
+    protected long[] samples = new long[1024];
+    protected int count = 0;
+    protected long errors = 0;
+
+    public synchronized void record(long nanos) {
+        if (count == samples.length)
+            samples = Arrays.copyOf(samples, count * 2);
+        samples[count++] = nanos;
+    }
+
+    public synchronized void error() {
+        errors++;
+    }
+
+    public synchronized void reset() {
+        count = 0;
+        errors = 0;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public static String header() {
+        return String.format(Locale.ROOT, "%-16s %10s %10s %8s %9s %9s %9s %9s %9s",
+                "scenario", "ops", "ops/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+    }
+
+    public synchronized String report(String name, double seconds) {
+        final long[] s = Arrays.copyOf(samples, count);
+        Arrays.sort(s);
+        return String.format(Locale.ROOT, "%-16s %10d %10.1f %8d %9.3f %9.3f %9.3f %9.3f %9.3f",
+                name, count, count / seconds, errors,
+                millis(s, 0.5), millis(s, 0.9), millis(s, 0.99), millis(s, 0.999),
+                s.length == 0 ? Double.NaN : s[s.length - 1] / 1e6);
+    }
+
+    protected static double millis(long[] sorted, double p) {
+        if (sorted.length == 0)
+            return Double.NaN;
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1e6;
+    }
+}
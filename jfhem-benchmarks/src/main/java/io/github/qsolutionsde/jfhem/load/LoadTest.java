@@ -0,0 +1,237 @@
+package io.github.qsolutionsde.jfhem.load;
+
+import io.github.qsolutionsde.jfhem.FHEMEventListener;
+import io.github.qsolutionsde.jfhem.amqp.AMQPEventPublisher;
+import io.github.qsolutionsde.jfhem.amqp.AMQPOutbox;
+import io.github.qsolutionsde.jfhem.amqp.OutboxConfig;
+import io.github.qsolutionsde.jfhem.data.TimestampFormat;
+import io.github.qsolutionsde.jfhem.http.FHEMHttpConnection;
+import io.github.qsolutionsde.jfhem.http.FHEMWebConfig;
+import io.github.qsolutionsde.jfhem.simulator.FHEMSimulator;
+import io.github.qsolutionsde.jfhem.simulator.Options;
+import io.github.qsolutionsde.jfhem.simulator.SimulatorConfig;
+import io.github.qsolutionsde.jfhem.telnet.FHEMTelnetCommandExecutor;
+import io.github.qsolutionsde.jfhem.telnet.FHEMTelnetConfig;
+import io.github.qsolutionsde.jfhem.telnet.FHEMTelnetConnection;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Drives the gateway components against an {@link FHEMSimulator} and reports throughput and latency percentiles.
+ *
+ * Scenarios:
+ * <ul>
+ *     <li>{@code inform}: events from the simulator through {@link FHEMTelnetConnection} to a listener and
+ *     through {@link AMQPEventPublisher} and its outbox to an {@link InProcessBroker}, latency of the probe events
+ *     </li>
+ *     <li>{@code jsonlist2}: {@link FHEMHttpConnection#getReadingsDirect(List)} of single devices</li>
+ *     <li>{@code http-command} and {@code telnet-command}: {@code set} commands</li>
+ *     <li>{@code rest}: device readings from a running gateway, given by {@code --gateway}</li>
+ * </ul>
+ * Events are generated during all scenarios. Arguments are {@code --key=value} pairs of {@link LoadTestConfig}.
+ */
+public class LoadTest {
+    protected final LoadTestConfig config;
+    protected final FHEMSimulator simulator;
+    protected final List<String> devices;
+    protected final MeterRegistry registry = new SimpleMeterRegistry();
+
+    public LoadTest(LoadTestConfig config) throws IOException {
+        this.config = config;
+        final SimulatorConfig s = new SimulatorConfig();
+        s.setDevices(config.getDevices());
+        s.setEventRate(config.getEventRate());
+        s.setProbeInterval(config.getProbeInterval());
+        s.setHttpThreads(Math.max(8, config.getThreads() * 2));
+        if (config.isCsrf())
+            s.setCsrfToken("csrf_" + Long.toHexString(System.nanoTime()));
+        simulator = new FHEMSimulator(s);
+        devices = new ArrayList<>(simulator.getDeviceNames());
+    }
+
+    public static void main(String[] args) throws Exception {
+        final LoadTestConfig c = Options.apply(new LoadTestConfig(), args);
+        final LoadTest t = new LoadTest(c);
+        System.out.println("FHEM simulator: " + c.getDevices() + " devices, " + c.getEventRate() + " events/s, telnet port "
+                + t.simulator.getTelnetPort() + ", " + t.simulator.getUrl());
+        System.out.println(Latencies.header());
+        try {
+            for (String s : c.getScenarios().split(","))
+                t.run(s.trim());
+        } finally {
+            t.simulator.close();
+        }
+    }
+
+    public void run(String scenario) throws Exception {
+        switch (scenario) {
+            case "inform":
+                inform();
+                break;
+            case "jsonlist2":
+                jsonlist2();
+                break;
+            case "http-command":
+                httpCommand();
+                break;
+            case "telnet-command":
+                telnetCommand();
+                break;
+            case "rest":
+                rest();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown scenario " + scenario);
+        }
+    }
+
+    protected FHEMWebConfig.FHEMHostConfig webConfig() {
+        final FHEMWebConfig.FHEMHostConfig c = new FHEMWebConfig.FHEMHostConfig().url(simulator.getUrl());
+        c.setCommandConcurrency(config.getThreads());
+        return config.isCsrf() ? c.useCsrf() : c;
+    }
+
+    protected FHEMTelnetConfig.FHEMTelnetHostConfig telnetConfig() {
+        final FHEMTelnetConfig.FHEMTelnetHostConfig c =
+                new FHEMTelnetConfig.FHEMTelnetHostConfig().host("localhost").port(simulator.getTelnetPort());
+        c.setInform(config.getInform());
+        c.setInformTimer(config.isInformTimer());
+        return c;
+    }
+
+    protected String randomDevice() {
+        return devices.get(ThreadLocalRandom.current().nextInt(devices.size()));
+    }
+
+    protected void inform() throws Exception {
+        final Latencies listener = new Latencies();
+        final Latencies amqp = new Latencies();
+        final LongAdder received = new LongAdder();
+
+        final Path spool = Files.createTempDirectory("outbox");
+        final OutboxConfig oc = new OutboxConfig();
+        oc.setDirectory(spool.toString());
+        final InProcessBroker broker = new InProcessBroker(amqp);
+
+        final FHEMTelnetConnection c = new FHEMTelnetConnection(telnetConfig(), registry);
+        final FHEMEventListener l = (host, deviceType, device, reading, value) -> {
+            received.increment();
+            if (FHEMSimulator.PROBE_DEVICE.equals(device))
+                listener.record(System.nanoTime() - Long.parseLong(value));
+        };
+        c.addListener(l);
+        try (AMQPOutbox outbox = new AMQPOutbox(broker, oc, registry);
+             AMQPEventPublisher publisher = new AMQPEventPublisher(outbox, Collections.singletonList(c),
+                     TimestampFormat.SECONDS, registry)) {
+            try {
+                for (int i = 0; i < 100 && simulator.getInformers() == 0; i++)
+                    Thread.sleep(50);
+
+                Thread.sleep(config.getWarmup() * 1000L);
+                listener.reset();
+                amqp.reset();
+                final long emitted = simulator.getEvents();
+                final long receivedBefore = received.sum();
+                final long messagesBefore = broker.getMessages();
+                final long start = System.nanoTime();
+                Thread.sleep(config.getDuration() * 1000L);
+                final double seconds = (System.nanoTime() - start) / 1e9;
+
+                final long e = simulator.getEvents() - emitted;
+                final long r = received.sum() - receivedBefore;
+                final long m = broker.getMessages() - messagesBefore;
+                System.out.println(listener.report("inform", seconds));
+                System.out.println(amqp.report("inform-amqp", seconds));
+                System.out.printf("%-16s %.1f events/s emitted, %.1f received, %.1f AMQP messages/s, latency of probes%n",
+                        "", e / seconds, r / seconds, m / seconds);
+            } finally {
+                // before the publisher and its outbox, which would spool the events still arriving
+                c.close();
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(spool)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    protected void jsonlist2() throws Exception {
+        final FHEMHttpConnection c = new FHEMHttpConnection(webConfig(), registry);
+        drive("jsonlist2", () -> !c.getReadingsDirect(Collections.singletonList(randomDevice())).isEmpty());
+    }
+
+    protected void httpCommand() throws Exception {
+        final FHEMHttpConnection c = new FHEMHttpConnection(webConfig(), registry);
+        drive("http-command", () -> c.execute("set " + randomDevice() + " desired-temp 21.5") != null);
+    }
+
+    protected void telnetCommand() throws Exception {
+        final FHEMTelnetCommandExecutor c = new FHEMTelnetCommandExecutor(telnetConfig(), registry);
+        drive("telnet-command", () -> c.execute("set " + randomDevice() + " on") != null);
+    }
+
+    protected void rest() throws Exception {
+        if (config.getGateway() == null) {
+            System.out.printf("%-16s skipped, no --gateway%n", "rest");
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(config.getThreads());
+        try {
+            final HttpClient client = HttpClient.newBuilder().executor(executor).build();
+            final String base = config.getGateway() + "/fhem/" + config.getGatewayHost() + "/";
+            drive("rest", () -> client.send(HttpRequest.newBuilder(URI.create(base + randomDevice())).build(),
+                    HttpResponse.BodyHandlers.discarding()).statusCode() == 200);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Runs {@code operation} in {@link LoadTestConfig#getThreads()} closed loops, first for the warmup,
+     * then measured.
+     */
+    protected void drive(String name, Callable<Boolean> operation) throws InterruptedException {
+        final Latencies latencies = new Latencies();
+        final ExecutorService pool = Executors.newFixedThreadPool(config.getThreads());
+        final long warmupEnd = System.nanoTime() + config.getWarmup() * 1_000_000_000L;
+        final long end = warmupEnd + config.getDuration() * 1_000_000_000L;
+
+        for (int i = 0; i < config.getThreads(); i++)
+            pool.execute(() -> {
+                for (long now = System.nanoTime(); now < end; ) {
+                    boolean ok;
+                    try {
+                        ok = operation.call();
+                    } catch (Exception e) {
+                        ok = false;
+                    }
+                    final long done = System.nanoTime();
+                    if (now >= warmupEnd) {
+                        if (ok)
+                            latencies.record(done - now);
+                        else
+                            latencies.error();
+                    }
+                    now = done;
+                }
+            });
+        pool.shutdown();
+        pool.awaitTermination(config.getWarmup() + config.getDuration() + 60, TimeUnit.SECONDS);
+        System.out.println(latencies.report(name, config.getDuration()));
+    }
+}
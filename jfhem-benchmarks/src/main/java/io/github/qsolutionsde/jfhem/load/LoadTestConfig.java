@@ -0,0 +1,27 @@
+package io.github.qsolutionsde.jfhem.load;
+
+import lombok.Data;
+
+@Data
+public class LoadTestConfig {
+    // comma separated: inform, jsonlist2, http-command, telnet-command, rest
+    protected String scenarios = "inform,jsonlist2,http-command,telnet-command,rest";
+    protected int devices = 500;
+    // events per second generated by the simulator
+    protected int eventRate = 2000;
+    protected int probeInterval = 20;
+    // inform filter of the gateway connection, should match sim_probe for the latencies
+    protected String inform = null;
+    // inform timer, events carry the time the simulator sent them
+    protected boolean informTimer = false;
+    // seconds per scenario, after warmup seconds
+    protected int duration = 20;
+    protected int warmup = 5;
+    // concurrent clients of the request scenarios
+    protected int threads = 8;
+    protected boolean csrf = false;
+    // base URL of a gateway connected to a standalone simulator, e.g. http://localhost:8080, rest is skipped without
+    protected String gateway = null;
+    // host of the simulator as configured in the gateway
+    protected String gatewayHost = "localhost";
+}
@@ -0,0 +1,448 @@
+package io.github.qsolutionsde.jfhem.simulator;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for an FHEM installation: a telnet port streaming events after {@code inform on} or, prefixed with
+ * their time in milliseconds like with {@code attr global mseclog 1}, {@code inform timer}, and answering
+ * commands, and a FHEMWEB endpoint at {@code /fhem} answering {@code cmd} incl. {@code jsonlist2}, optionally
+ * checking the CSRF token.
+ *
+ * Events are generated at {@link SimulatorConfig#getEventRate()} over random readings of the devices. Every
+ * {@link SimulatorConfig#getProbeInterval()}-th event is reading {@value #PROBE_READING} of device
+ * {@value #PROBE_DEVICE} carrying {@link System#nanoTime()} of its emission, so clients in the same JVM can
+ * measure latency.
+ */
+@Slf4j
+public class FHEMSimulator implements Closeable {
+    public static final String PROBE_DEVICE = "sim_probe";
+    public static final String PROBE_READING = "sent";
+
+    protected static final String CSRF_HEADER = "X-FHEM-csrfToken";
+    protected static final long TICK_MILLIS = 10;
+
+    @Getter
+    protected final SimulatorConfig config;
+    protected final Map<String, SimulatedDevice> devices = new LinkedHashMap<>();
+    protected final DateTimeFormatter time;
+    protected final DateTimeFormatter timer;
+    protected final Random random;
+
+    protected final ServerSocket telnet;
+    protected final HttpServer http;
+    protected final ExecutorService connections;
+    protected final ScheduledExecutorService generator;
+
+    protected final List<InformClient> informers = new CopyOnWriteArrayList<>();
+    protected final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    protected final AtomicLong events = new AtomicLong();
+    protected final AtomicLong commands = new AtomicLong();
+    protected double pending = 0;
+    protected volatile boolean running = true;
+
+    public FHEMSimulator(SimulatorConfig config) throws IOException {
+        this.config = config;
+        this.time = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.of(config.getTimezone()));
+        this.timer = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS ").withZone(ZoneId.of(config.getTimezone()));
+        this.random = new Random(config.getSeed());
+
+        final String now = now();
+        final SimulatedDevice.Model[] models = SimulatedDevice.Model.values();
+        for (int i = 0; i < config.getDevices(); i++) {
+            final String name = String.format("sim_%05d", i);
+            devices.put(name, new SimulatedDevice(name, models[i % models.length], random, now));
+        }
+
+        connections = Executors.newCachedThreadPool(daemon("simulator-telnet"));
+        telnet = new ServerSocket(config.getTelnetPort());
+        connections.execute(this::accept);
+
+        // headers and body are written separately, Nagle would delay the body until the client acks
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        http = HttpServer.create(new InetSocketAddress(config.getHttpPort()), 64);
+        http.createContext("/fhem", this::handle);
+        http.setExecutor(Executors.newFixedThreadPool(config.getHttpThreads(), daemon("simulator-http")));
+        http.start();
+
+        generator = Executors.newSingleThreadScheduledExecutor(daemon("simulator-events"));
+        generator.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+        log.info("Simulating {} devices, telnet port {}, http port {}", devices.size(), getTelnetPort(), getHttpPort());
+    }
+
+    protected static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    public int getTelnetPort() {
+        return telnet.getLocalPort();
+    }
+
+    public int getHttpPort() {
+        return http.getAddress().getPort();
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + getHttpPort() + "/fhem";
+    }
+
+    public Collection<String> getDeviceNames() {
+        return devices.keySet();
+    }
+
+    /** @return events sent so far to each informed client */
+    public long getEvents() {
+        return events.get();
+    }
+
+    /** @return commands answered so far via telnet and http */
+    public long getCommands() {
+        return commands.get();
+    }
+
+    public int getInformers() {
+        return informers.size();
+    }
+
+    /** Changes the event rate, 0 pauses event generation. */
+    public void setEventRate(int eventRate) {
+        config.setEventRate(eventRate);
+    }
+
+    protected String now() {
+        return time.format(Instant.now());
+    }
+
+    // generation
+
+    protected void tick() {
+        try {
+            pending += config.getEventRate() * TICK_MILLIS / 1000.0;
+            final int n = (int) pending;
+            pending -= n;
+            if (n == 0 || informers.isEmpty() || devices.isEmpty())
+                return;
+
+            final String now = now();
+            final List<SimulatedDevice> l = new ArrayList<>(devices.values());
+            final StringBuilder b = new StringBuilder(n * 48);
+            for (int i = 0; i < n; i++) {
+                final long seq = events.incrementAndGet();
+                if (config.getProbeInterval() > 0 && seq % config.getProbeInterval() == 0) {
+                    b.append("dummy ").append(PROBE_DEVICE).append(' ').append(PROBE_READING).append(": ")
+                            .append(System.nanoTime()).append('\n');
+                    continue;
+                }
+                final SimulatedDevice d = l.get(random.nextInt(l.size()));
+                final String r = d.randomReading(random);
+                event(b, d, r, d.update(r, random, now));
+            }
+            inform(b.toString());
+        } catch (Exception e) {
+            log.error("Error generating events", e);
+        }
+    }
+
+    protected static void event(StringBuilder b, SimulatedDevice d, String reading, String value) {
+        b.append(d.getType()).append(' ').append(d.getName()).append(' ');
+        if (!"state".equals(reading))
+            b.append(reading).append(": ");
+        b.append(value).append('\n');
+    }
+
+    protected void inform(String lines) {
+        for (InformClient c : informers)
+            c.send(lines);
+    }
+
+    // telnet
+
+    protected void accept() {
+        while (running) {
+            try {
+                final Socket s = telnet.accept();
+                s.setTcpNoDelay(true);
+                clients.add(s);
+                connections.execute(() -> serve(s));
+            } catch (IOException e) {
+                if (running)
+                    log.error("Error accepting telnet connection", e);
+            }
+        }
+    }
+
+    protected void serve(Socket s) {
+        InformClient informer = null;
+        try (s;
+             BufferedReader r = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             Writer w = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            if (config.getTelnetPassword() != null && !config.getTelnetPassword().equals(r.readLine()))
+                return;
+
+            for (String line = r.readLine(); line != null; line = r.readLine()) {
+                line = line.trim();
+                if (line.isEmpty())
+                    continue;
+                if (line.equals("quit") || line.equals("exit"))
+                    return;
+                if (line.startsWith("inform")) {
+                    final String[] p = line.split(" +", 3);
+                    if (informer != null)
+                        informers.remove(informer);
+                    informer = null;
+                    if (p.length > 1 && !"off".equals(p[1])) {
+                        informer = new InformClient(w, p.length > 2 ? Pattern.compile(p[2]) : null,
+                                "timer".equals(p[1]));
+                        informers.add(informer);
+                    }
+                    continue;
+                }
+                final String reply = command(line);
+                synchronized (w) {
+                    w.write(reply);
+                    w.write('\n');
+                    w.flush();
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Telnet connection closed", e);
+        } finally {
+            clients.remove(s);
+            if (informer != null)
+                informers.remove(informer);
+        }
+    }
+
+    protected class InformClient {
+        protected final Writer writer;
+        // like FHEM, matched against the device name or "<device>:<event>"
+        protected final Pattern filter;
+        // inform timer
+        protected final boolean timestamps;
+
+        protected InformClient(Writer writer, Pattern filter, boolean timestamps) {
+            this.writer = writer;
+            this.filter = filter;
+            this.timestamps = timestamps;
+        }
+
+        protected void send(String lines) {
+            try {
+                synchronized (writer) {
+                    if (filter == null && !timestamps)
+                        writer.write(lines);
+                    else {
+                        final String t = timestamps ? timer.format(Instant.now()) : null;
+                        for (String l : lines.split("\n")) {
+                            final String[] p = l.split(" ", 3);
+                            if (filter == null || filter.matcher(p[1]).find() || filter.matcher(p[1] + ":" + p[2]).find()) {
+                                if (t != null)
+                                    writer.write(t);
+                                writer.write(l);
+                                writer.write('\n');
+                            }
+                        }
+                    }
+                    writer.flush();
+                }
+            } catch (IOException e) {
+                informers.remove(this);
+            }
+        }
+    }
+
+    // commands
+
+    /**
+     * Executes a command like FHEM would, for {@code set}, {@code setreading}, {@code jsonlist2}, {@code list}
+     * and the heartbeat of the gateway.
+     *
+     * @return the output, empty on success without output
+     */
+    public String command(String command) {
+        commands.incrementAndGet();
+        final String[] p = command.trim().split(" +", 4);
+        switch (p[0]) {
+            case "set":
+            case "setreading":
+                if (p.length < 3)
+                    return "Usage: " + p[0] + " <devspec> <reading> <value>";
+                final SimulatedDevice d = devices.get(p[1]);
+                if (d == null)
+                    return "Please define " + p[1] + " first";
+                final String reading;
+                final String value;
+                if ("setreading".equals(p[0]) || (p.length == 4 && d.hasReading(p[2]))) {
+                    reading = p.length == 4 ? p[2] : "state";
+                    value = p.length == 4 ? p[3] : p[2];
+                } else {
+                    reading = "state";
+                    value = p.length == 4 ? p[2] + " " + p[3] : p[2];
+                }
+                d.set(reading, value, now());
+                final StringBuilder b = new StringBuilder();
+                event(b, d, reading, value);
+                inform(b.toString());
+                return "";
+            case "jsonlist2":
+                return jsonlist2(p.length > 1 ? command.trim().substring(10).trim() : "");
+            case "list":
+                return String.join("\n", devices.keySet());
+            case "{\"jfhem-heartbeat\"}":
+                return "jfhem-heartbeat";
+            default:
+                return "Unknown command " + p[0] + ", try help.";
+        }
+    }
+
+    protected String jsonlist2(String devspec) {
+        final List<SimulatedDevice> l = new ArrayList<>();
+        if (devspec.isEmpty())
+            l.addAll(devices.values());
+        else
+            for (String s : devspec.split("[,|]")) {
+                final SimulatedDevice d = devices.get(s);
+                if (d != null)
+                    l.add(d);
+                else {
+                    final Pattern regex = Pattern.compile(s);
+                    devices.values().stream().filter(x -> regex.matcher(x.getName()).matches()).forEach(l::add);
+                }
+            }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(256 + l.size() * 512);
+        try (JsonGenerator g = new JsonFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            g.writeStartObject();
+            g.writeStringField("Arg", devspec);
+            g.writeArrayFieldStart("Results");
+            for (SimulatedDevice d : l) {
+                g.writeStartObject();
+                g.writeStringField("Name", d.getName());
+                g.writeStringField("PossibleSets", "on off desired-temp");
+                g.writeStringField("PossibleAttrs", "room alias");
+                g.writeObjectFieldStart("Internals");
+                g.writeStringField("NAME", d.getName());
+                g.writeStringField("TYPE", d.getType());
+                g.writeEndObject();
+                g.writeObjectFieldStart("Readings");
+                for (Map.Entry<String, String[]> e : d.getReadings().entrySet()) {
+                    g.writeObjectFieldStart(e.getKey());
+                    g.writeStringField("Value", e.getValue()[0]);
+                    g.writeStringField("Time", e.getValue()[1]);
+                    g.writeEndObject();
+                }
+                g.writeEndObject();
+                g.writeObjectFieldStart("Attributes");
+                g.writeStringField("room", "Simulation");
+                g.writeEndObject();
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+            g.writeNumberField("totalResultsReturned", l.size());
+            g.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    // FHEMWEB
+
+    protected void handle(HttpExchange x) throws IOException {
+        try {
+            final Map<String, String> q = query(x.getRequestURI().getRawQuery());
+            if (config.getCsrfToken() != null)
+                x.getResponseHeaders().add(CSRF_HEADER, config.getCsrfToken());
+
+            final String cmd = q.get("cmd");
+            if (cmd == null) {
+                respond(x, 200, "text/html", "<html><body>FHEM simulator</body></html>");
+                return;
+            }
+            if (config.getCsrfToken() != null && !config.getCsrfToken().equals(q.get("fwcsrf"))) {
+                respond(x, 400, "text/plain", "FHEMWEB WEB CSRF error: received " + q.get("fwcsrf")
+                        + ". For details check the csrfToken FHEMWEB attribute.");
+                return;
+            }
+            final String reply = command(cmd);
+            respond(x, 200, cmd.startsWith("jsonlist2") ? "application/json" : "text/plain", reply);
+        } finally {
+            x.close();
+        }
+    }
+
+    protected static void respond(HttpExchange x, int status, String contentType, String body) throws IOException {
+        final byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        x.getResponseHeaders().add("Content-Type", contentType + "; charset=UTF-8");
+        x.sendResponseHeaders(status, b.length == 0 ? -1 : b.length);
+        if (b.length > 0)
+            try (OutputStream out = x.getResponseBody()) {
+                out.write(b);
+            }
+    }
+
+    protected static Map<String, String> query(String raw) {
+        final Map<String, String> m = new HashMap<>();
+        if (raw != null)
+            for (String p : raw.split("&")) {
+                final int i = p.indexOf('=');
+                if (i > 0)
+                    m.put(URLDecoder.decode(p.substring(0, i), StandardCharsets.UTF_8),
+                            URLDecoder.decode(p.substring(i + 1), StandardCharsets.UTF_8));
+                else
+                    m.put(URLDecoder.decode(p, StandardCharsets.UTF_8), "");
+            }
+        return m;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        generator.shutdownNow();
+        http.stop(0);
+        ((ExecutorService) http.getExecutor()).shutdownNow();
+        telnet.close();
+        for (Socket s : clients)
+            s.close();
+        connections.shutdownNow();
+    }
+
+    /**
+     * Runs the simulator standalone, e.g. as FHEM for a gateway under test.
+     * Arguments are {@code --key=value} pairs of {@link SimulatorConfig}.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final SimulatorConfig c = new SimulatorConfig();
+        c.setTelnetPort(7072);
+        c.setHttpPort(8083);
+        Options.apply(c, args);
+        try (FHEMSimulator s = new FHEMSimulator(c)) {
+            System.out.println("FHEM simulator: telnet port " + s.getTelnetPort() + ", " + s.getUrl());
+            Thread.currentThread().join();
+        }
+    }
+}
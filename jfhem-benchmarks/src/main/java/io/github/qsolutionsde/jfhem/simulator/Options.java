@@ -0,0 +1,63 @@
+package io.github.qsolutionsde.jfhem.simulator;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Applies command line arguments {@code --some-key=value} to the setter {@code setSomeKey} of a config object,
+ * {@code --flag} sets {@code true}.
+ */
+public final class Options {
+    private Options() {}
+
+    public static <T> T apply(T config, String... args) {
+        for (String a : args) {
+            if (!a.startsWith("--"))
+                throw new IllegalArgumentException("Expected --key=value: " + a);
+            final int i = a.indexOf('=');
+            final String key = i < 0 ? a.substring(2) : a.substring(2, i);
+            final String value = i < 0 ? "true" : a.substring(i + 1);
+            set(config, setter(key), value);
+        }
+        return config;
+    }
+
+    private static String setter(String key) {
+        final StringBuilder b = new StringBuilder("set");
+        boolean upper = true;
+        for (char c : key.toCharArray()) {
+            if (c == '-')
+                upper = true;
+            else {
+                b.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return b.toString();
+    }
+
+    private static void set(Object config, String setter, String value) {
+        for (Method m : config.getClass().getMethods())
+            if (m.getName().equals(setter) && m.getParameterCount() == 1) {
+                final Class<?> t = m.getParameterTypes()[0];
+                try {
+                    if (t == int.class)
+                        m.invoke(config, Integer.parseInt(value));
+                    else if (t == long.class)
+                        m.invoke(config, Long.parseLong(value));
+                    else if (t == double.class)
+                        m.invoke(config, Double.parseDouble(value));
+                    else if (t == boolean.class)
+                        m.invoke(config, Boolean.parseBoolean(value));
+                    else if (t == String.class)
+                        m.invoke(config, value);
+                    else
+                        continue;
+                    return;
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    throw new IllegalArgumentException("Error setting " + setter + " to " + value, e);
+                }
+            }
+        throw new IllegalArgumentException("Unknown option " + setter.substring(3));
+    }
+}
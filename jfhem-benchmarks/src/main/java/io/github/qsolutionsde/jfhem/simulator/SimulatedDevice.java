@@ -0,0 +1,98 @@
+package io.github.qsolutionsde.jfhem.simulator;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A device of the simulator with its readings, typed after devices found in real installations.
+ */
+public class SimulatedDevice {
+    public enum Model {
+        THERMOSTAT("CUL_HM", "measured-temp", "desired-temp", "humidity", "actuator", "battery"),
+        SWITCH("ZWave", "state", "power", "energy"),
+        CONTACT("HMCCU", "state", "battery"),
+        METER("OBIS", "total_consumption", "power", "voltage");
+
+        protected final String type;
+        protected final String[] readings;
+
+        Model(String type, String... readings) {
+            this.type = type;
+            this.readings = readings;
+        }
+    }
+
+    protected final String name;
+    protected final Model model;
+    // reading -> [value, time], guarded by this
+    protected final Map<String, String[]> readings = new LinkedHashMap<>();
+    protected double level;
+
+    public SimulatedDevice(String name, Model model, Random random, String time) {
+        this.name = name;
+        this.model = model;
+        this.level = 15 + random.nextInt(10);
+        for (String r : model.readings)
+            readings.put(r, new String[] { next(r, random), time });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getType() {
+        return model.type;
+    }
+
+    public String randomReading(Random random) {
+        return model.readings[random.nextInt(model.readings.length)];
+    }
+
+    /** Generates and sets the next value of a reading, a random walk for numbers. */
+    public synchronized String update(String reading, Random random, String time) {
+        final String v = next(reading, random);
+        readings.put(reading, new String[] { v, time });
+        return v;
+    }
+
+    public synchronized void set(String reading, String value, String time) {
+        readings.put(reading, new String[] { value, time });
+    }
+
+    public synchronized boolean hasReading(String reading) {
+        return readings.containsKey(reading);
+    }
+
+    /** @return copy of reading -> [value, time] */
+    public synchronized Map<String, String[]> getReadings() {
+        return new LinkedHashMap<>(readings);
+    }
+
+    protected String next(String reading, Random random) {
+        level += random.nextGaussian() * 0.2;
+        switch (reading) {
+            case "state":
+                return model == Model.CONTACT ? (random.nextBoolean() ? "open" : "closed")
+                        : (random.nextBoolean() ? "on" : "off");
+            case "battery":
+                return random.nextInt(20) == 0 ? "low" : "ok";
+            case "desired-temp":
+                return Double.toString(17 + random.nextInt(10) * 0.5);
+            case "actuator":
+                return random.nextInt(101) + " %";
+            case "humidity":
+                return Integer.toString(35 + random.nextInt(30));
+            case "energy":
+            case "total_consumption":
+                return String.format(Locale.ROOT, "%.3f", 1000 + level * 10);
+            case "voltage":
+                return String.format(Locale.ROOT, "%.1f", 225 + random.nextGaussian() * 3);
+            case "power":
+                return String.format(Locale.ROOT, "%.1f", Math.abs(level * 20));
+            default:
+                return String.format(Locale.ROOT, "%.1f", level);
+        }
+    }
+}
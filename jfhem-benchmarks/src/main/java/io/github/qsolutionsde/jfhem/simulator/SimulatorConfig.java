@@ -0,0 +1,22 @@
+package io.github.qsolutionsde.jfhem.simulator;
+
+import lombok.Data;
+
+@Data
+public class SimulatorConfig {
+    // 0 picks a free port
+    protected int telnetPort = 0;
+    protected int httpPort = 0;
+    protected String telnetPassword = null;
+    // token expected in fwcsrf, null disables the check
+    protected String csrfToken = null;
+    protected String timezone = "Europe/Berlin";
+
+    protected int devices = 100;
+    // events per second over all devices, 0 for none
+    protected int eventRate = 1000;
+    // every n-th event is a probe carrying System.nanoTime() of its emission
+    protected int probeInterval = 100;
+    protected int httpThreads = 8;
+    protected long seed = 42;
+}
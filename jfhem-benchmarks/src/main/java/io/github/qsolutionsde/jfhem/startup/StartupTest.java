@@ -0,0 +1,158 @@
+package io.github.qsolutionsde.jfhem.startup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.qsolutionsde.jfhem.simulator.FHEMSimulator;
+import io.github.qsolutionsde.jfhem.simulator.Options;
+import io.github.qsolutionsde.jfhem.simulator.SimulatorConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Smoke test of the gateway executables against an {@link FHEMSimulator}: starts the native image and the
+ * executable jar, whichever exist, and reports the time until the HTTP port answers, the time until the FHEM
+ * connections are ready and the resident set size. Then checks that readings are served from the simulator.
+ *
+ * Arguments are {@code --key=value} pairs of {@link StartupTestConfig}. Exits with 1 if a gateway fails.
+ * No broker is needed, the gateway retries RabbitMQ in the background.
+ */
+public class StartupTest {
+    protected static final String HOST = "localhost";
+
+    protected final StartupTestConfig config;
+    protected final FHEMSimulator simulator;
+    protected final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+    protected final ObjectMapper mapper = new ObjectMapper();
+    protected boolean failed = false;
+
+    public StartupTest(StartupTestConfig config) throws IOException {
+        this.config = config;
+        final SimulatorConfig s = new SimulatorConfig();
+        s.setDevices(config.getDevices());
+        s.setEventRate(config.getEventRate());
+        simulator = new FHEMSimulator(s);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final StartupTest t = new StartupTest(Options.apply(new StartupTestConfig(), args));
+        System.out.printf("%-8s %12s %12s %10s  %s%n", "gateway", "started ms", "ready ms", "RSS MB", "check");
+        try {
+            t.run("native", t.config.getNativeImage(), List.of(t.config.getNativeImage()));
+            t.run("jvm", t.config.getJar(), List.of(t.config.getJava(), "-jar", t.config.getJar()));
+        } finally {
+            t.simulator.close();
+        }
+        System.exit(t.failed ? 1 : 0);
+    }
+
+    protected void run(String name, String file, List<String> command) throws Exception {
+        if (!new File(file).isFile()) {
+            System.out.printf("%-8s skipped, %s not found%n", name, file);
+            return;
+        }
+        final List<String> c = new ArrayList<>(command);
+        c.addAll(Arrays.asList(
+                "--server.port=" + config.getPort(),
+                "--fhemgateway.telnet.hosts[0].host=" + HOST,
+                "--fhemgateway.telnet.hosts[0].port=" + simulator.getTelnetPort(),
+                "--fhemgateway.http.hosts[0].url=" + simulator.getUrl(),
+                "--fhemgateway.amqp.queue=fhem-commandqueue",
+                "--management.endpoint.health.show-details=always"));
+        final Path log = Files.createTempFile("jfhem-" + name, ".log");
+        final long start = System.nanoTime();
+        final Process p = new ProcessBuilder(c).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        try {
+            long started = -1;
+            long ready = -1;
+            final long deadline = start + config.getTimeout() * 1_000_000_000L;
+            while (ready < 0 && System.nanoTime() < deadline && p.isAlive()) {
+                final JsonNode h = health();
+                if (h != null && started < 0)
+                    started = (System.nanoTime() - start) / 1_000_000;
+                if (h != null && isReady(h.path("components").path("fhem").path("details")))
+                    ready = (System.nanoTime() - start) / 1_000_000;
+                else
+                    Thread.sleep(10);
+            }
+            if (ready < 0) {
+                fail(name, p.isAlive() ? "not ready within " + config.getTimeout() + " s" : "exited", log);
+                return;
+            }
+            Thread.sleep(config.getSettle() * 1000L);
+            final long rss = rss(p.pid());
+            final String check = check();
+            System.out.printf("%-8s %12d %12d %10s  %s%n", name, started, ready,
+                    rss < 0 ? "n/a" : String.format("%.1f", rss / 1048576.0), check == null ? "ok" : check);
+            if (check != null)
+                fail(name, check, log);
+        } finally {
+            p.destroy();
+            p.waitFor();
+        }
+    }
+
+    /** @return the health document, also when the gateway is down for lack of a broker, null if not answering */
+    protected JsonNode health() {
+        try {
+            return mapper.readTree(get("/actuator/health").body());
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    protected static boolean isReady(JsonNode fhem) {
+        return "READY".equals(fhem.path("telnet").path(HOST).path("state").asText())
+                && "READY".equals(fhem.path("http").path(HOST).path("state").asText());
+    }
+
+    /** @return null if readings of a simulated device are served, otherwise the error */
+    protected String check() throws InterruptedException {
+        final String device = simulator.getDeviceNames().iterator().next();
+        try {
+            final HttpResponse<String> r = get("/fhem/" + HOST + "/" + device);
+            if (r.statusCode() != 200)
+                return "status " + r.statusCode() + " reading " + device;
+            if (mapper.readTree(r.body()).size() == 0)
+                return "no readings of " + device;
+            return null;
+        } catch (IOException e) {
+            return e.toString();
+        }
+    }
+
+    protected HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return http.send(HttpRequest.newBuilder(URI.create("http://localhost:" + config.getPort() + path))
+                .timeout(Duration.ofSeconds(5)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /** @return resident set size in bytes from {@code /proc}, -1 where not available */
+    protected static long rss(long pid) {
+        try {
+            for (String l : Files.readAllLines(Path.of("/proc/" + pid + "/status")))
+                if (l.startsWith("VmRSS:"))
+                    return Long.parseLong(l.replaceAll("[^0-9]", "")) * 1024;
+        } catch (IOException | NumberFormatException e) {
+            // not Linux
+        }
+        return -1;
+    }
+
+    protected void fail(String name, String message, Path log) {
+        System.out.printf("%-8s FAILED: %s, output in %s%n", name, message, log);
+        failed = true;
+    }
+}
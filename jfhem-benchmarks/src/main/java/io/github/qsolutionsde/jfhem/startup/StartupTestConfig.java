@@ -0,0 +1,19 @@
+package io.github.qsolutionsde.jfhem.startup;
+
+import lombok.Data;
+
+@Data
+public class StartupTestConfig {
+    // native executable built with -Pnative, skipped if missing
+    protected String nativeImage = "../target/jfhem";
+    // executable jar, skipped if missing
+    protected String jar = "../target/jfhem-1.0.0-SNAPSHOT-exec.jar";
+    protected String java = "java";
+    protected int port = 18080;
+    // seconds until the FHEM hosts of the gateway must be ready
+    protected int timeout = 120;
+    // seconds after ready before the resident set size is taken
+    protected int settle = 5;
+    protected int devices = 100;
+    protected int eventRate = 100;
+}
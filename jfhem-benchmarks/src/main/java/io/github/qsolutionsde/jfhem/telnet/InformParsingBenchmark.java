@@ -0,0 +1,48 @@
+package io.github.qsolutionsde.jfhem.telnet;
+
+import io.github.qsolutionsde.jfhem.Fixtures;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FHEMTelnetConnection#processLine(String)} per line of the {@code inform.txt} fixture, dispatching to
+ * a listener that only consumes the events.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InformParsingBenchmark {
+
+    private List<String> lines;
+    private int next = 0;
+    private FHEMTelnetConnection connection;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        lines = Fixtures.lines("inform.txt");
+        connection = new UnconnectedConnection();
+        connection.addListener((host, deviceType, device, reading, value) -> bh.consume(value));
+    }
+
+    @Benchmark
+    public void processLine() {
+        connection.processLine(lines.get(next));
+        next = next + 1 == lines.size() ? 0 : next + 1;
+    }
+
+    static class UnconnectedConnection extends FHEMTelnetConnection {
+        UnconnectedConnection() {
+            super("localhost");
+        }
+
+        @Override
+        protected void connect() {
+        }
+    }
+}
@@ -4,39 +4,74 @@ import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import io.github.qsolutionsde.jfhem.amqp.AMQPEventController;
 import io.github.qsolutionsde.jfhem.amqp.AMQPEventPublisher;
+import io.github.qsolutionsde.jfhem.amqp.AMQPOutbox;
+import io.github.qsolutionsde.jfhem.amqp.AMQPSnapshotPublisher;
 import io.github.qsolutionsde.jfhem.amqp.AmqpConfig;
+import io.github.qsolutionsde.jfhem.amqp.EnvelopeConfig;
+import io.github.qsolutionsde.jfhem.amqp.SnapshotConfig;
+import io.github.qsolutionsde.jfhem.amqp.OutboxConfig;
+import io.github.qsolutionsde.jfhem.cluster.ClusterConfig;
+import io.github.qsolutionsde.jfhem.cluster.RabbitShardBroker;
+import io.github.qsolutionsde.jfhem.cluster.ShardManager;
+import io.github.qsolutionsde.jfhem.data.CoarseClock;
+import io.github.qsolutionsde.jfhem.data.TimestampClock;
+import io.github.qsolutionsde.jfhem.data.TimestampFormat;
+import io.github.qsolutionsde.jfhem.data.TimestampedValue;
 import io.github.qsolutionsde.jfhem.data.TimestampedValueModule;
+import io.github.qsolutionsde.jfhem.derived.DerivedConfig;
+import io.github.qsolutionsde.jfhem.derived.DerivedReadings;
+import io.github.qsolutionsde.jfhem.expiry.ExpiryConfig;
+import io.github.qsolutionsde.jfhem.expiry.ExpiryTracker;
+import io.github.qsolutionsde.jfhem.history.HistoryConfig;
+import io.github.qsolutionsde.jfhem.history.TimeSeriesStore;
 import io.github.qsolutionsde.jfhem.http.FHEMHttpConnection;
 import io.github.qsolutionsde.jfhem.http.FHEMWebConfig;
+import io.github.qsolutionsde.jfhem.journal.Journal;
+import io.github.qsolutionsde.jfhem.journal.JournalConfig;
+import io.github.qsolutionsde.jfhem.state.StateRegistry;
 import io.github.qsolutionsde.jfhem.telnet.FHEMTelnetCommandExecutor;
 import io.github.qsolutionsde.jfhem.telnet.FHEMTelnetConfig;
 import io.github.qsolutionsde.jfhem.telnet.FHEMTelnetConnection;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Condition;
 import org.springframework.context.annotation.ConditionContext;
 import org.springframework.context.annotation.Conditional;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
 import org.springframework.core.type.AnnotatedTypeMetadata;
 import org.springframework.retry.annotation.EnableRetry;
 import org.springframework.scheduling.annotation.EnableAsync;
 
+import javax.annotation.PostConstruct;
+import java.io.IOException;
 import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
-@SpringBootApplication
+// no @Bean method calls another, so no configuration class proxy, which native images cannot generate
+@SpringBootApplication(proxyBeanMethods = false)
 @Slf4j
 @EnableRetry
 @EnableAsync
@@ -50,52 +85,164 @@ public class App {
         SpringApplication.run(App.class, args);
     }
 
+    @Getter @Setter protected TimestampFormat timestampFormat = TimestampFormat.SECONDS;
+
+    @Getter @Setter protected Duration clockResolution;
+
+    /**
+     * Replaces the clock of timestamped values by a coarse one, if a resolution is configured.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "fhemgateway", name = "clock-resolution")
+    public CoarseClock coarseClock() {
+        log.info("Using coarse clock with resolution {}", clockResolution);
+        CoarseClock c = new CoarseClock(clockResolution);
+        TimestampClock.set(c);
+        return c;
+    }
+
+    @Getter @Setter protected boolean virtualThreads = false;
+
+    /**
+     * Switches telnet readers and command execution to virtual threads before the connections are created.
+     */
+    @PostConstruct
+    void threads() {
+        Threads.setVirtual(virtualThreads);
+    }
+
+    /**
+     * Servlet requests on virtual threads, so requests waiting for FHEM do not hold Tomcat workers.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "fhemgateway", name = "virtual-threads", havingValue = "true")
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadTomcat() {
+        return f -> f.addProtocolHandlerCustomizers(h -> {
+            if (Threads.isVirtual())
+                h.setExecutor(Threads.executor("http-"));
+        });
+    }
+
+    /**
+     * {@code @Async} tasks on virtual threads, replaces the default task executor.
+     */
+    @Bean(name = { "applicationTaskExecutor", "taskExecutor" })
+    @ConditionalOnProperty(prefix = "fhemgateway", name = "virtual-threads", havingValue = "true")
+    public AsyncTaskExecutor virtualThreadTaskExecutor() {
+        return new TaskExecutorAdapter(Threads.executor("task-"));
+    }
+
     @Bean SimpleModule timestampedModule() {
-        return new TimestampedValueModule();
+        return new TimestampedValueModule(timestampFormat);
     }
 
     @Bean JavaTimeModule javaTimeModule() {
         return new JavaTimeModule();
     }
 
+    @Getter @Setter protected ClusterConfig cluster = new ClusterConfig();
+
+    /**
+     * Connections are established in the background, in a cluster they start when their shard is claimed.
+     */
     @Bean
-    List<FHEMTelnetConnection> telnetControllers() {
+    List<FHEMTelnetConnection> telnetControllers(MeterRegistry registry) {
         if (telnet == null)
             return Collections.emptyList();
         log.info("Starting telnet connections");
         return telnet.getHosts().stream()
-                .map(FHEMTelnetConnection::new)
+                .map(h -> new FHEMTelnetConnection(h, registry, !cluster.isEnabled()))
                 .collect(Collectors.toList());
     }
 
     @Bean("executors")
-    List<FHEMTelnetCommandExecutor> telnetExecutors() {
+    List<FHEMTelnetCommandExecutor> telnetExecutors(MeterRegistry registry) {
         if (telnet == null)
             return Collections.emptyList();
         log.info("Starting telnet executors");
         return telnet.getHosts().stream()
-                .map(FHEMTelnetCommandExecutor::new)
+                .map(h -> new FHEMTelnetCommandExecutor(h, registry))
                 .collect(Collectors.toList());
     }
 
     @Bean
-    List<FHEMHttpConnection> webConnections() {
+    List<FHEMHttpConnection> webConnections(MeterRegistry registry) {
         if (http == null)
             return Collections.emptyList();
         log.info("Starting http connections");
         return http.getHosts().stream()
-                .map(FHEMHttpConnection::new)
+                .map(h -> new FHEMHttpConnection(h, registry))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Reported as {@code fhem} by the health endpoint.
+     */
+    @Bean
+    public FHEMHealthIndicator fhemHealthIndicator(@Qualifier("telnetControllers") List<FHEMTelnetConnection> cs,
+                                                   @Qualifier("webConnections") List<FHEMHttpConnection> web) {
+        return new FHEMHealthIndicator(cs, web);
+    }
+
+    @Getter @Setter protected HistoryConfig history = new HistoryConfig();
+
+    @Bean
+    public TimeSeriesStore timeSeriesStore(@Qualifier("telnetControllers") List<FHEMTelnetConnection> cs) {
+        log.info("Creating history store");
+        return new TimeSeriesStore(history, history.isEnabled() ? cs : Collections.emptyList());
+    }
+
+    @Bean
+    public StateRegistry stateRegistry(@Qualifier("telnetControllers") List<FHEMTelnetConnection> cs) {
+        log.info("Creating state registry");
+        return new StateRegistry(cs);
+    }
+
+    @Getter @Setter protected JournalConfig journal = new JournalConfig();
+
+    /**
+     * Rebuilds state and history from the journal before recording new events. The whole journal is replayed,
+     * from EPOCH: events come in append order, not by timestamp, and the state registry keeps the newest of them.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "fhemgateway.journal", name = "enabled", havingValue = "true")
+    public Journal journal(@Qualifier("telnetControllers") List<FHEMTelnetConnection> cs,
+                           StateRegistry state, TimeSeriesStore history) throws IOException {
+        log.info("Creating journal");
+        Journal j = new Journal(journal);
+        j.replay(Instant.EPOCH, (timestamp, host, deviceType, device, reading, value) -> {
+            state.update(host, deviceType, device, reading, new TimestampedValue<>(value, timestamp));
+            history.record(host, device, reading, value, timestamp.toEpochMilli());
+        });
+        cs.forEach(c -> c.addListener(j));
+        return j;
+    }
+
     @Getter @Setter protected AmqpConfig amqp;
 
     @Bean public Queue fhemCommandQueue() {
         return QueueBuilder.durable(amqp.getQueue()).ttl(amqp.getTtl()).build();
     }
 
+    /**
+     * In a cluster, commands are bound to the single active consumer queue of the shard of their host instead.
+     */
     @Bean
     public Declarables fhemCommandQueueBindings(Queue q) {
+        if (cluster.isEnabled()) {
+            log.info("Declaring shard queues");
+            final List<Declarable> l = new LinkedList<>();
+            l.add(q);
+            final List<List<String>> shards = ShardManager.assign(telnetHosts(), cluster.getShards());
+            for (int s = 0; s < shards.size(); s++)
+                l.addAll(createDeviceQueue(
+                        amqp.getExchange(),
+                        QueueBuilder.durable(ShardManager.queue(cluster, s)).ttl(amqp.getTtl()).singleActiveConsumer().build(),
+                        ShardManager.routingKeys(amqp.getPrefix(), shards.get(s)).toArray(new String[0]),
+                        amqp.getTtl()));
+            return new Declarables(l);
+        }
+
         final String p = amqp.getPrefix() + ".*.";
         log.info("Declaring fhem queue");
         return new Declarables(createDeviceQueue(
@@ -105,19 +252,111 @@ public class App {
                 amqp.getTtl()));
     }
 
+    protected List<String> telnetHosts() {
+        return telnet == null ? Collections.emptyList() :
+                telnet.getHosts().stream().map(FHEMTelnetConfig.FHEMTelnetHostConfig::getHost).collect(Collectors.toList());
+    }
+
+    /**
+     * Claims shards of the telnet hosts, starts their connections and publishes only their events.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "fhemgateway.cluster", name = "enabled", havingValue = "true")
+    public ShardManager shardManager(ConnectionFactory factory,
+                                     RabbitTemplate template,
+                                     AMQPEventController controller,
+                                     AMQPEventPublisher publisher,
+                                     @Qualifier("telnetControllers") List<FHEMTelnetConnection> cs,
+                                     MeterRegistry registry) {
+        log.info("Creating shard manager");
+        final Map<String, FHEMTelnetConnection> connections = new HashMap<>();
+        cs.forEach(c -> connections.put(c.getHost().getHost(), c));
+        ShardManager m = new ShardManager(cluster, telnetHosts(), new RabbitShardBroker(factory, template),
+                controller::processMessageMain,
+                new ShardManager.Listener() {
+                    @Override
+                    public void claimed(int shard, List<String> hosts, long since) {
+                        hosts.forEach(h -> connections.get(h).start(since));
+                    }
+
+                    @Override
+                    public void released(int shard, List<String> hosts) {
+                        hosts.forEach(h -> connections.get(h).stop());
+                    }
+                },
+                registry);
+        publisher.setHostFilter(m::isOwned);
+        m.start();
+        return m;
+    }
+
+    @Getter @Setter protected SnapshotConfig snapshot = new SnapshotConfig();
+
     @Bean
     public AMQPEventController amqpEventController( RabbitTemplate template,
                                                     @Qualifier("executors") List<? extends FHEMCommandExecutor> l,
-                                                    Queue q) {
+                                                    Queue q,
+                                                    @Qualifier("telnetControllers") List<FHEMTelnetConnection> cs,
+                                                    StateRegistry state,
+                                                    MeterRegistry registry) {
         log.info("Creating AMQP event controller");
-        return new AMQPEventController(template,l,q);
+        return new AMQPEventController(template,l,q,
+                snapshot.isEnabled() ? new AMQPSnapshotPublisher(template,state,cs,timestampFormat,snapshot,registry) : null);
     }
 
-    @Bean
-    public AMQPEventPublisher amqpEventPublisher(RabbitTemplate rabbit,
-                                                 @Qualifier("telnetControllers") List<FHEMTelnetConnection> cs) {
+    @Getter @Setter protected OutboxConfig outbox = new OutboxConfig();
+
+    @Bean(destroyMethod = "close")
+    public AMQPOutbox amqpOutbox(RabbitTemplate rabbit, MeterRegistry registry) throws IOException {
+        log.info("Creating AMQP outbox");
+        return new AMQPOutbox(rabbit, outbox, registry);
+    }
+
+    @Getter @Setter protected EnvelopeConfig envelope = new EnvelopeConfig();
+
+    @Bean(destroyMethod = "close")
+    public AMQPEventPublisher amqpEventPublisher(AMQPOutbox o,
+                                                 @Qualifier("telnetControllers") List<FHEMTelnetConnection> cs,
+                                                 MeterRegistry registry) {
         log.info("Creating AMQP event publisher");
-        return new AMQPEventPublisher(rabbit,cs);
+        return new AMQPEventPublisher(o,cs,timestampFormat,envelope,registry);
+    }
+
+    @Getter @Setter protected DerivedConfig derived = new DerivedConfig();
+
+    /**
+     * Derived readings start from the (replayed) state and are published like events of the telnet connections.
+     */
+    @Bean
+    public DerivedReadings derivedReadings(@Qualifier("telnetControllers") List<FHEMTelnetConnection> cs,
+                                           StateRegistry state,
+                                           TimeSeriesStore history,
+                                           AMQPEventPublisher publisher,
+                                           ObjectProvider<Journal> journal) {
+        log.info("Creating derived readings");
+        DerivedReadings d = new DerivedReadings(derived, cs);
+        journal.ifAvailable(d::addListener);
+        d.initialize(state);
+        d.addListener(state);
+        if (history.getConfig().isEnabled())
+            d.addListener(history);
+        d.addListener(publisher);
+        return d;
+    }
+
+    @Getter @Setter protected ExpiryConfig expiry = new ExpiryConfig();
+
+    @Bean(destroyMethod = "close")
+    public ExpiryTracker expiryTracker(@Qualifier("telnetControllers") List<FHEMTelnetConnection> cs,
+                                       StateRegistry state,
+                                       DerivedReadings derived,
+                                       AMQPEventPublisher publisher) {
+        log.info("Creating expiry tracker");
+        ExpiryTracker t = new ExpiryTracker(expiry, cs);
+        t.initialize(state);
+        derived.addListener(t);
+        t.addListener(publisher);
+        return t;
     }
 
     protected List<Declarable> createDeviceQueue(String exchange, Queue q, String[] keys, int ttl) {
@@ -0,0 +1,50 @@
+package io.github.qsolutionsde.jfhem;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and failures of the commands of one {@link FHEMCommandExecutor}, per command type.
+ *
+ * Timers are registered up front for the known FHEM commands, other commands are counted as {@code other},
+ * so recording neither allocates nor registers meters.
+ */
+public class CommandMetrics {
+    protected static final String[] TYPES = {
+            "set", "setreading", "get", "attr", "deleteattr", "define", "delete", "save", "shutdown", "update",
+            "jsonlist2", "list", "trigger" };
+    protected static final String OTHER = "other";
+
+    protected final Timer[] timers = new Timer[TYPES.length + 1];
+    protected final Counter failures;
+
+    public CommandMetrics(MeterRegistry registry, String protocol, String host) {
+        for (int i = 0; i < TYPES.length; i++)
+            timers[i] = registry.timer("fhem.command", "protocol", protocol, "host", host, "type", TYPES[i]);
+        timers[TYPES.length] = registry.timer("fhem.command", "protocol", protocol, "host", host, "type", OTHER);
+        failures = registry.counter("fhem.command.failures", "protocol", protocol, "host", host);
+    }
+
+    /**
+     * @param start {@link System#nanoTime()} when the command was started
+     * @param success whether FHEM could be reached
+     */
+    public void record(String command, long start, boolean success) {
+        timer(command).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (!success)
+            failures.increment();
+    }
+
+    protected Timer timer(String command) {
+        int end = command.indexOf(' ');
+        if (end < 0)
+            end = command.length();
+        for (int i = 0; i < TYPES.length; i++)
+            if (TYPES[i].length() == end && command.regionMatches(true, 0, TYPES[i], 0, end))
+                return timers[i];
+        return timers[TYPES.length];
+    }
+}
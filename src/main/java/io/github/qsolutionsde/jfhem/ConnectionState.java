@@ -0,0 +1,15 @@
+package io.github.qsolutionsde.jfhem;
+
+/**
+ * State of the connection to an FHEM host, reported by {@link FHEMHealthIndicator}.
+ */
+public enum ConnectionState {
+    /** not reached yet since started */
+    CONNECTING,
+    /** reached, events are received or the last request succeeded */
+    READY,
+    /** lost or the last request failed, retrying */
+    DEGRADED,
+    /** not started or stopped, e.g. the host is owned by another gateway of the cluster */
+    STANDBY
+}
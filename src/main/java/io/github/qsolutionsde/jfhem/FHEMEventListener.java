@@ -2,4 +2,25 @@ package io.github.qsolutionsde.jfhem;
 
 public interface FHEMEventListener {
     public void event(String host, String deviceType, String device, String reading, String value);
+
+    /**
+     * An event with the time FHEM generated it, taken from {@code inform timer} or the readings of a resync,
+     * otherwise the time it was received. Listeners keeping timestamps override this one.
+     *
+     * @param timestamp epoch millis
+     */
+    public default void event(long timestamp, String host, String deviceType, String device, String reading, String value) {
+        event(host, deviceType, device, reading, value);
+    }
+
+    /**
+     * An event with {@code live} set if it just came in with the inform stream and its timestamp is the time FHEM
+     * generated it from {@code inform timer}, so the time since is the delay of delivering it.
+     *
+     * @param timestamp epoch millis
+     */
+    public default void event(long timestamp, boolean live, String host, String deviceType, String device,
+                              String reading, String value) {
+        event(timestamp, host, deviceType, device, reading, value);
+    }
 }
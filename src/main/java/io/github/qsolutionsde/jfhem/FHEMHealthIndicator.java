@@ -0,0 +1,54 @@
+package io.github.qsolutionsde.jfhem;
+
+import io.github.qsolutionsde.jfhem.http.FHEMHttpConnection;
+import io.github.qsolutionsde.jfhem.telnet.FHEMTelnetConnection;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Health of the FHEM hosts: {@code UP} while all connections are connecting or ready, {@link #DEGRADED} if one
+ * is lost. Hosts are connected in the background, so the gateway is up before they are reached.
+ */
+public class FHEMHealthIndicator implements HealthIndicator {
+    public static final Status DEGRADED = new Status("DEGRADED", "FHEM host unreachable");
+
+    protected final List<FHEMTelnetConnection> telnet;
+    protected final List<FHEMHttpConnection> http;
+
+    public FHEMHealthIndicator(List<FHEMTelnetConnection> telnet, List<FHEMHttpConnection> http) {
+        this.telnet = telnet;
+        this.http = http;
+    }
+
+    @Override
+    public Health health() {
+        boolean degraded = false;
+        final Map<String, Object> t = new LinkedHashMap<>();
+        for (FHEMTelnetConnection c : telnet) {
+            degraded |= c.getState() == ConnectionState.DEGRADED;
+            t.put(c.getHost().getHost(), details(c.getState(), c.getLastError()));
+        }
+        final Map<String, Object> h = new LinkedHashMap<>();
+        for (FHEMHttpConnection c : http) {
+            degraded |= c.getState() == ConnectionState.DEGRADED;
+            h.put(c.getHost(), details(c.getState(), c.getLastError()));
+        }
+        return Health.status(degraded ? DEGRADED : Status.UP)
+                .withDetail("telnet", t)
+                .withDetail("http", h)
+                .build();
+    }
+
+    protected static Map<String, Object> details(ConnectionState state, String error) {
+        final Map<String, Object> m = new LinkedHashMap<>();
+        m.put("state", state);
+        if (state == ConnectionState.DEGRADED && error != null)
+            m.put("error", error);
+        return m;
+    }
+}
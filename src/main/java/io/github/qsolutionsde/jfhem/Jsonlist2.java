@@ -0,0 +1,81 @@
+package io.github.qsolutionsde.jfhem;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.qsolutionsde.jfhem.data.TimestampedValue;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Parser of FHEM {@code jsonlist2} output, as returned by FHEMWEB and telnet.
+ *
+ * Reading times are local times of the FHEM host in {@code zone}. Device, type and reading names are taken from
+ * {@link Symbols}.
+ */
+@Slf4j
+public final class Jsonlist2 {
+    protected static final ObjectMapper mapper = new ObjectMapper();
+    protected static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private Jsonlist2() {}
+
+    @FunctionalInterface
+    public interface DeviceHandler {
+        void device(String name, String type, Map<String, TimestampedValue<String>> readings);
+    }
+
+    /** @return readings per device */
+    public static Map<String, Map<String, TimestampedValue<String>>> parse(InputStream in, ZoneId zone) throws IOException {
+        Map<String, Map<String, TimestampedValue<String>>> rl = new HashMap<>();
+        parse(in, zone, (name, type, readings) -> rl.put(name, readings));
+        return rl;
+    }
+
+    /**
+     * Passes every device with its type and readings to {@code handler}. Readings without valid time have
+     * a {@code null} last update.
+     */
+    public static void parse(InputStream in, ZoneId zone, DeviceHandler handler) throws IOException {
+        JsonNode o = mapper.readTree(in);
+        if (o == null)
+            throw new IOException("Empty jsonlist2 response");
+
+        for (JsonNode res : o.withArray("Results")) {
+            Map<String, TimestampedValue<String>> rs = new HashMap<>();
+            JsonNode readings = res.get("Readings");
+            if (readings != null) {
+                for (Iterator<Map.Entry<String, JsonNode>> f = readings.fields(); f.hasNext(); ) {
+                    Map.Entry<String, JsonNode> e = f.next();
+                    String reading = Symbols.intern(e.getKey());
+                    String value = e.getValue().get("Value").asText();
+                    String date = e.getValue().get("Time").asText();
+                    Instant lastUpdate = null;
+                    try {
+                        lastUpdate = LocalDateTime.parse(date, TIME)
+                                .atZone(zone)
+                                .toInstant();
+                    } catch (Exception ex) {
+                        log.error("Error parsing last update date", ex);
+                    }
+                    if (log.isDebugEnabled())
+                        log.debug("Reading found: {}:{} = {} at {}", res.get("Name"), reading, value, (lastUpdate == null) ? "null" : lastUpdate.toString());
+                    rs.put(reading, new TimestampedValue<>(value, lastUpdate));
+                }
+            } else {
+                log.error("No readings {}", mapper.writeValueAsString(res));
+            }
+            JsonNode internals = res.get("Internals");
+            String type = internals == null || internals.get("TYPE") == null ? null : Symbols.intern(internals.get("TYPE").asText());
+            handler.device(Symbols.intern(res.get("Name").asText()), type, rs);
+        }
+    }
+}
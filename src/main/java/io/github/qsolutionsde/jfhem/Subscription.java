@@ -0,0 +1,85 @@
+package io.github.qsolutionsde.jfhem;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.regex.Pattern;
+
+/**
+ * Events a listener is interested in: regular expressions for device type, device and reading, each matching the
+ * whole name, {@code null} for any name. Expressions without special characters are plain names and looked up
+ * by hash.
+ */
+@Getter
+@EqualsAndHashCode
+public class Subscription {
+    public static final Subscription ALL = new Subscription(null, null, null);
+
+    protected final String deviceType;
+    protected final String device;
+    protected final String reading;
+
+    protected Subscription(String deviceType, String device, String reading) {
+        this.deviceType = any(deviceType) ? null : deviceType;
+        this.device = any(device) ? null : device;
+        this.reading = any(reading) ? null : reading;
+        for (String s : new String[] {this.deviceType, this.device, this.reading})
+            if (s != null && !isName(s))
+                Pattern.compile(s);
+    }
+
+    public static Subscription of(String deviceType, String device, String reading) {
+        return new Subscription(deviceType, device, reading);
+    }
+
+    /** @return the subscription of exactly the given names, {@code null} for any */
+    public static Subscription names(String deviceType, String device, String reading) {
+        return new Subscription(quote(deviceType), quote(device), quote(reading));
+    }
+
+    protected static String quote(String name) {
+        return name == null || isName(name) ? name : Pattern.quote(name);
+    }
+
+    public static Subscription device(String device) {
+        return new Subscription(null, device, null);
+    }
+
+    public static Subscription deviceType(String deviceType) {
+        return new Subscription(deviceType, null, null);
+    }
+
+    public boolean isAll() {
+        return deviceType == null && device == null && reading == null;
+    }
+
+    public boolean matches(String deviceType, String device, String reading) {
+        return matches(this.deviceType, deviceType) && matches(this.device, device) && matches(this.reading, reading);
+    }
+
+    protected static boolean matches(String expression, String name) {
+        if (expression == null)
+            return true;
+        return isName(expression) ? expression.equals(name) : Pattern.matches(expression, name);
+    }
+
+    protected static boolean any(String expression) {
+        return expression == null || ".*".equals(expression);
+    }
+
+    /** @return whether {@code expression} has no characters with a special meaning in regular expressions */
+    public static boolean isName(String expression) {
+        for (int i = 0; i < expression.length(); i++) {
+            final char c = expression.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != ':' && c != ' ')
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return (deviceType == null ? "*" : deviceType) + "|" + (device == null ? "*" : device) + ":"
+                + (reading == null ? "*" : reading);
+    }
+}
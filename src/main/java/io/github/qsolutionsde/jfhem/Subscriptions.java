@@ -0,0 +1,146 @@
+package io.github.qsolutionsde.jfhem;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable set of listeners with their {@link Subscription}s, compiled into a trie over device type, device and
+ * reading, with hashed children for plain names and matched children for patterns.
+ *
+ * The listeners of a device type, device and reading are computed once and cached per device, so dispatching
+ * an event takes two hash lookups. If every listener subscribed to all events, the trie is skipped. A listener
+ * with several matching subscriptions gets the event once.
+ */
+public final class Subscriptions {
+    public static final Subscriptions EMPTY = new Subscriptions(Collections.emptyList());
+
+    protected static final int MAX_CACHED_DEVICES = 1 << 16;
+    protected static final int MAX_CACHED_READINGS = 1 << 10;
+
+    protected final List<Registration> registrations;
+    // all listeners, if they all subscribed to all events
+    protected final FHEMEventListener[] all;
+    protected final Node root = new Node();
+    protected final Map<String, Device> cache = new ConcurrentHashMap<>();
+
+    protected Subscriptions(List<Registration> registrations) {
+        this.registrations = registrations;
+        boolean a = true;
+        for (int i = 0; i < registrations.size(); i++) {
+            final Subscription s = registrations.get(i).subscription;
+            a &= s.isAll();
+            root.child(s.getDeviceType()).child(s.getDevice()).child(s.getReading()).registrations.add(i);
+        }
+        all = a ? registrations.stream().map(r -> r.listener).distinct().toArray(FHEMEventListener[]::new) : null;
+    }
+
+    public Subscriptions with(FHEMEventListener l, Subscription s) {
+        final List<Registration> rs = new ArrayList<>(registrations);
+        rs.add(new Registration(l, s));
+        return new Subscriptions(rs);
+    }
+
+    /** @return the subscriptions without any of {@code l} */
+    public Subscriptions without(FHEMEventListener l) {
+        final List<Registration> rs = new ArrayList<>(registrations);
+        rs.removeIf(r -> r.listener == l);
+        return rs.size() == registrations.size() ? this : new Subscriptions(rs);
+    }
+
+    public boolean isEmpty() {
+        return registrations.isEmpty();
+    }
+
+    /** @return the listeners subscribed to the event, in the order they were added */
+    public FHEMEventListener[] listeners(String deviceType, String device, String reading) {
+        if (all != null)
+            return all;
+
+        Device d = cache.get(device);
+        if (d == null || !Objects.equals(d.deviceType, deviceType)) {
+            if (cache.size() >= MAX_CACHED_DEVICES)
+                return match(deviceType, device, reading);
+            d = new Device(deviceType);
+            cache.put(device, d);
+        }
+        FHEMEventListener[] ls = d.readings.get(reading);
+        if (ls == null) {
+            ls = match(deviceType, device, reading);
+            if (d.readings.size() < MAX_CACHED_READINGS)
+                d.readings.put(reading, ls);
+        }
+        return ls;
+    }
+
+    protected FHEMEventListener[] match(String deviceType, String device, String reading) {
+        final BitSet matched = new BitSet(registrations.size());
+        root.collect(new String[] {deviceType, device, reading}, 0, matched);
+        final List<FHEMEventListener> ls = new ArrayList<>(matched.cardinality());
+        for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1))
+            if (!ls.contains(registrations.get(i).listener))
+                ls.add(registrations.get(i).listener);
+        return ls.toArray(new FHEMEventListener[0]);
+    }
+
+    protected static class Registration {
+        protected final FHEMEventListener listener;
+        protected final Subscription subscription;
+
+        protected Registration(FHEMEventListener listener, Subscription subscription) {
+            this.listener = listener;
+            this.subscription = subscription;
+        }
+    }
+
+    // level of the trie, the third level holds the indexes of the registrations
+    protected static class Node {
+        protected final Map<String, Node> names = new HashMap<>();
+        protected final List<Pattern> patterns = new ArrayList<>();
+        protected final List<Node> patternNodes = new ArrayList<>();
+        protected Node any;
+        protected final List<Integer> registrations = new ArrayList<>();
+
+        protected Node child(String expression) {
+            if (expression == null) {
+                if (any == null)
+                    any = new Node();
+                return any;
+            }
+            if (Subscription.isName(expression))
+                return names.computeIfAbsent(expression, x -> new Node());
+            for (int i = 0; i < patterns.size(); i++)
+                if (patterns.get(i).pattern().equals(expression))
+                    return patternNodes.get(i);
+            final Node n = new Node();
+            patterns.add(Pattern.compile(expression));
+            patternNodes.add(n);
+            return n;
+        }
+
+        protected void collect(String[] names, int level, BitSet matched) {
+            if (level == names.length) {
+                registrations.forEach(matched::set);
+                return;
+            }
+            final String name = names[level] == null ? "" : names[level];
+            final Node n = this.names.get(name);
+            if (n != null)
+                n.collect(names, level + 1, matched);
+            if (any != null)
+                any.collect(names, level + 1, matched);
+            for (int i = 0; i < patterns.size(); i++)
+                if (patterns.get(i).matcher(name).matches())
+                    patternNodes.get(i).collect(names, level + 1, matched);
+        }
+    }
+
+    protected static class Device {
+        protected final String deviceType;
+        protected final Map<String, FHEMEventListener[]> readings = new ConcurrentHashMap<>();
+
+        protected Device(String deviceType) {
+            this.deviceType = deviceType;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package io.github.qsolutionsde.jfhem;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Table of the host, device type, device and reading names, mapping each name to a canonical {@code String} and
+ * a compact id starting at 0.
+ *
+ * Names are looked up without locking, also as a region of a longer string, e.g. an inform line, so known names
+ * need no new {@code String}. Adding a name takes a lock. The table is bounded by {@value #MAX_SYMBOLS} names,
+ * further names are returned as they are, with id {@value #NONE}.
+ */
+@Slf4j
+public final class Symbols {
+    public static final int NONE = -1;
+    public static final int MAX_SYMBOLS = 1 << 20;
+
+    private static final Object LOCK = new Object();
+
+    // open addressing, at most half full, slots are only set under LOCK
+    private static volatile Symbol[] table = new Symbol[1024];
+    private static volatile Symbol[] byId = new Symbol[512];
+    private static int size = 0;
+
+    private Symbols() {}
+
+    /** @return the canonical instance of {@code s}, {@code null} for {@code null} */
+    public static String intern(String s) {
+        if (s == null)
+            return null;
+        final Symbol e = symbol(s, 0, s.length(), s.hashCode());
+        return e == null ? s : e.name;
+    }
+
+    /** @return the canonical instance of {@code s.substring(from, to)} */
+    public static String intern(String s, int from, int to) {
+        final Symbol e = symbol(s, from, to, hash(s, from, to));
+        return e == null ? s.substring(from, to) : e.name;
+    }
+
+    /** @return the id of {@code s}, {@link #NONE} if the table is full */
+    public static int id(String s) {
+        final Symbol e = symbol(s, 0, s.length(), s.hashCode());
+        return e == null ? NONE : e.id;
+    }
+
+    /** @return the name with the given id, {@code null} if unknown */
+    public static String name(int id) {
+        if (id < 0)
+            return null;
+        final Symbol[] b = byId;
+        final Symbol e = id < b.length ? b[id] : null;
+        if (e != null)
+            return e.name;
+        synchronized (LOCK) {
+            return id < size ? byId[id].name : null;
+        }
+    }
+
+    public static int size() {
+        synchronized (LOCK) {
+            return size;
+        }
+    }
+
+    // same as String.hashCode of the region
+    private static int hash(String s, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++)
+            h = 31 * h + s.charAt(i);
+        return h;
+    }
+
+    private static int index(int hash, int mask) {
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static Symbol symbol(String s, int from, int to, int hash) {
+        final Symbol e = find(table, s, from, to, hash);
+        return e != null ? e : add(s, from, to, hash);
+    }
+
+    private static Symbol find(Symbol[] t, String s, int from, int to, int hash) {
+        final int mask = t.length - 1;
+        final int length = to - from;
+        for (int i = index(hash, mask); ; i = (i + 1) & mask) {
+            final Symbol e = t[i];
+            if (e == null)
+                return null;
+            if (e.hash == hash && e.name.length() == length && e.name.regionMatches(0, s, from, length))
+                return e;
+        }
+    }
+
+    private static Symbol add(String s, int from, int to, int hash) {
+        synchronized (LOCK) {
+            Symbol e = find(table, s, from, to, hash);
+            if (e != null)
+                return e;
+            if (size == MAX_SYMBOLS) {
+                log.warn("Symbol table full, not adding {}", s.substring(from, to));
+                return null;
+            }
+
+            e = new Symbol(from == 0 && to == s.length() ? s : s.substring(from, to), size, hash);
+            if (size == byId.length) {
+                final Symbol[] b = new Symbol[size * 2];
+                System.arraycopy(byId, 0, b, 0, size);
+                b[size] = e;
+                byId = b;
+            } else
+                byId[size] = e;
+            size++;
+
+            if (size * 2 > table.length) {
+                final Symbol[] t = new Symbol[table.length * 2];
+                for (int i = 0; i < size; i++)
+                    insert(t, byId[i]);
+                table = t;
+            } else
+                insert(table, e);
+            return e;
+        }
+    }
+
+    private static void insert(Symbol[] t, Symbol e) {
+        final int mask = t.length - 1;
+        int i = index(e.hash, mask);
+        while (t[i] != null)
+            i = (i + 1) & mask;
+        t[i] = e;
+    }
+
+    // final fields, so readers racing with add see complete symbols
+    private static final class Symbol {
+        private final String name;
+        private final int id;
+        private final int hash;
+
+        private Symbol(String name, int id, int hash) {
+            this.name = name;
+            this.id = id;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.github.qsolutionsde.jfhem;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Threads for blocking work, telnet readers and FHEM commands: virtual threads if enabled and the runtime
+ * supports them (Java 21), daemon platform threads otherwise.
+ *
+ * Virtual threads are created reflectively, so the gateway still builds and runs on older runtimes.
+ */
+@Slf4j
+public final class Threads {
+    private static final Object VIRTUAL_BUILDER = virtualBuilder();
+    private static volatile boolean virtual = false;
+
+    private Threads() {}
+
+    private static Object virtualBuilder() {
+        try {
+            return Thread.class.getMethod("ofVirtual").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /** @return whether the runtime supports virtual threads */
+    public static boolean isVirtualSupported() {
+        return VIRTUAL_BUILDER != null;
+    }
+
+    public static boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Enables virtual threads for threads created afterwards, ignored with a warning if not supported.
+     */
+    public static void setVirtual(boolean enabled) {
+        if (enabled && !isVirtualSupported()) {
+            log.warn("Virtual threads need Java 21, running on {}, using platform threads",
+                    System.getProperty("java.version"));
+            enabled = false;
+        }
+        virtual = enabled;
+        if (enabled)
+            log.info("Using virtual threads");
+    }
+
+    /**
+     * @param name prefix of the thread names, followed by a counter
+     */
+    public static ThreadFactory factory(String name) {
+        if (virtual)
+            try {
+                final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                final Object b = builder.getMethod("name", String.class, long.class).invoke(VIRTUAL_BUILDER, name, 0L);
+                return (ThreadFactory) builder.getMethod("factory").invoke(b);
+            } catch (ReflectiveOperationException e) {
+                log.warn("Error creating virtual thread factory, using platform threads", e);
+            }
+
+        final AtomicLong count = new AtomicLong();
+        return r -> {
+            Thread t = new Thread(r, name + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * @return an executor starting a new virtual thread per task, or a cached pool of platform threads
+     */
+    public static ExecutorService executor(String name) {
+        if (virtual)
+            try {
+                final Method m = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                return (ExecutorService) m.invoke(null, factory(name));
+            } catch (ReflectiveOperationException e) {
+                log.warn("Error creating virtual thread executor, using platform threads", e);
+            }
+        return Executors.newCachedThreadPool(factory(name));
+    }
+}
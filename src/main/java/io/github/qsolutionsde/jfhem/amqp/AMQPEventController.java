@@ -9,7 +9,6 @@ import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.scheduling.annotation.Async;
 
 import java.util.HashMap;
 import java.util.List;
@@ -17,17 +16,27 @@ import java.util.Map;
 
 @Slf4j
 public class AMQPEventController {
+    protected static final String UPDATE = "update";
 
     protected final Map<String, FHEMCommandExecutor> executors = new HashMap<>();
 
     protected final RabbitTemplate rabbit;
 
+    // answers update from the gateway state, null to forward it to FHEM
+    protected final AMQPSnapshotPublisher snapshots;
+
     @Getter
     protected final Queue queue;
 
     public AMQPEventController(RabbitTemplate template, List<? extends FHEMCommandExecutor> l, Queue q) {
+        this(template, l, q, null);
+    }
+
+    public AMQPEventController(RabbitTemplate template, List<? extends FHEMCommandExecutor> l, Queue q,
+                               AMQPSnapshotPublisher snapshots) {
         this.rabbit = template;
         this.queue = q;
+        this.snapshots = snapshots;
         l.forEach(e -> executors.put(e.getHost(),e));
     }
 
@@ -36,6 +45,10 @@ public class AMQPEventController {
                                    @Payload String payload) {
         String[] t = topic.split("\\.");
 
+        if (t.length == 3 && UPDATE.equals(t[2]) && snapshots != null
+                && snapshots.publish(t[1], topic(t[0],t[1],"result",t[2])))
+            return;
+
         if (t.length == 3)
             fhemExec(t[1], t[2],topic(t[0],t[1],"result",t[2]));
         else
@@ -46,7 +59,7 @@ public class AMQPEventController {
         return String.join(".",s);
     }
 
-    @Async
+    // runs on the listener thread, one command at a time
     protected void fhemExec(String host, String cmd,String topic) {
         if (executors.containsKey(host)) {
             String line = executors.get(host).execute(cmd);
@@ -1,68 +1,353 @@
 package io.github.qsolutionsde.jfhem.amqp;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.github.qsolutionsde.jfhem.App;
 import io.github.qsolutionsde.jfhem.FHEMEventListener;
+import io.github.qsolutionsde.jfhem.Symbols;
+import io.github.qsolutionsde.jfhem.data.TimestampClock;
+import io.github.qsolutionsde.jfhem.data.TimestampFormat;
 import io.github.qsolutionsde.jfhem.telnet.FHEMTelnetConnection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.core.MessagePostProcessor;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.context.annotation.Conditional;
 
-import java.time.Instant;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
+/**
+ * Publishes every event as value on {@code fhem.<host>.<deviceType>.<device>[.<reading>]} and as JSON with
+ * {@code lastUpdate} on the same key prefixed by {@code timestamped}.
+ *
+ * Optionally, the events of each host are also collected into envelopes, published every
+ * {@link EnvelopeConfig#getMaxEvents()} events or after {@link EnvelopeConfig#getMaxDelay()}, for consumers of
+ * all events that would rather receive a few large messages than many small ones.
+ */
 @Slf4j
-public class AMQPEventPublisher implements FHEMEventListener {
-    protected final RabbitTemplate rabbit;
+public class AMQPEventPublisher implements FHEMEventListener, Closeable {
+    protected final AMQPOutbox outbox;
 
-    protected final Map<String,String> prefix = new HashMap<>();
+    protected final TimestampFormat format;
 
-    public AMQPEventPublisher(RabbitTemplate rabbit,
-                              List<FHEMTelnetConnection> cs) {
-        this.rabbit = rabbit;
+    protected final Timer eventTime;
+
+    protected final MeterRegistry registry;
+
+    protected final EnvelopeConfig envelopes;
+    protected final Counter envelopesPublished;
+    // publishes envelopes after maxDelay, null if disabled
+    protected final ScheduledExecutorService envelopeTimer;
+
+    protected final Map<String,Topics> topics = new ConcurrentHashMap<>();
+
+    // hosts whose events are published, those owned by this instance in a cluster
+    @Setter
+    protected volatile Predicate<String> hostFilter = h -> true;
+
+    public AMQPEventPublisher(AMQPOutbox outbox,
+                              List<FHEMTelnetConnection> cs,
+                              TimestampFormat format,
+                              MeterRegistry registry) {
+        this(outbox, cs, format, new EnvelopeConfig(), registry);
+    }
+
+    public AMQPEventPublisher(AMQPOutbox outbox,
+                              List<FHEMTelnetConnection> cs,
+                              TimestampFormat format,
+                              EnvelopeConfig envelopes,
+                              MeterRegistry registry) {
+        this.outbox = outbox;
+        this.format = format;
+        this.eventTime = registry.timer("amqp.event");
+        this.registry = registry;
+        this.envelopes = envelopes;
+        this.envelopesPublished = registry.counter("amqp.envelopes");
+        if (envelopes.isEnabled()) {
+            envelopeTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "amqp-envelopes");
+                t.setDaemon(true);
+                return t;
+            });
+            final long period = Math.max(10, envelopes.getMaxDelay().toMillis() / 4);
+            envelopeTimer.scheduleAtFixedRate(this::publishDueEnvelopes, period, period, TimeUnit.MILLISECONDS);
+        } else
+            envelopeTimer = null;
         for (FHEMTelnetConnection c :  cs) {
-            prefix.put(c.getHost().getHost(),topic("fhem", c.getHost().getHost().replace('.','-')));
+            topics.put(c.getHost().getHost(),topics(c.getHost().getHost()));
             c.addListener(this);
         }
     }
 
+    protected Topics topics(String host) {
+        return new Topics(prefix(host), Timer.builder("amqp.event.latency")
+                .description("time from the event in FHEM to handing it to the outbox")
+                .tag("host", host)
+                .publishPercentileHistogram()
+                .register(registry),
+                envelopes.isEnabled() ? new Envelope(host, topic(envelopes.getRoutingPrefix(), prefix(host))) : null);
+    }
+
     protected static String topic(String... s) {
         return String.join(".",s);
     }
 
-    protected static final String STATE = "state";
+    protected static String prefix(String host) {
+        return topic("fhem", host.replace('.','-'));
+    }
 
-    private final DateTimeFormatter fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+    protected static final String STATE = "state";
 
     private final ObjectMapper mapper = new ObjectMapper();
 
-    private final MessagePostProcessor jsonPP = message -> {
-        message.getMessageProperties().setContentType("application/json");
-        return message;
-    };
-
     @Override
     public void event(String host, String deviceType, String device, String reading, String value) {
-        String t =  STATE.equals(reading) ?
-                topic(prefix.get(host), deviceType, device) :
-                topic(prefix.get(host),deviceType, device, reading);
-        rabbit.convertAndSend(t,value);
+        event(TimestampClock.millis(), host, deviceType, device, reading, value);
+    }
+
+    @Override
+    public void event(long timestamp, String host, String deviceType, String device, String reading, String value) {
+        event(timestamp, false, host, deviceType, device, reading, value);
+    }
+
+    /**
+     * Publishes the value and the timestamped value with {@code timestamp} as {@code lastUpdate}. Only live events
+     * of {@code inform timer} are recorded in {@code amqp.event.latency}, resynchronized, derived or expiry events
+     * carry older times.
+     */
+    @Override
+    public void event(long timestamp, boolean live, String host, String deviceType, String device, String reading,
+                      String value) {
+        if (!hostFilter.test(host))
+            return;
+        final long start = System.nanoTime();
+        final Topics ts = topics.computeIfAbsent(host, this::topics);
+        Topic t = ts.get(deviceType, device, reading);
+        outbox.publish(t.routingKey,value,false);
 
         ObjectNode n = mapper.createObjectNode();
 
         n.put("value",value);
-        n.put("lastUpdate",fmt.format(Instant.now()));
+        if (format == TimestampFormat.EPOCH_MILLIS)
+            n.put("lastUpdate",timestamp);
+        else
+            n.put("lastUpdate",format.format(timestamp));
 
         try {
-            rabbit.convertAndSend(topic("timestamped",t), (Object) mapper.writeValueAsString(n),jsonPP);
+            outbox.publish(t.timestamped, mapper.writeValueAsString(n),true);
         } catch (JsonProcessingException e) {
             log.error("Error publishing timestamped event",e);
         }
+        if (ts.envelope != null)
+            ts.envelope.add(timestamp, deviceType, device, reading, value);
+        eventTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (live)
+            ts.latency.record(Math.max(0, TimestampClock.millis() - timestamp), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Routing keys of the events of a host, keyed by the {@link Symbols} ids of device and reading, so an event
+     * neither builds its routing keys nor hashes the names again. Reads don't lock.
+     */
+    protected static class Topics {
+        protected static final int MAX_TOPICS = 1 << 18;
+
+        protected final String prefix;
+        protected final Timer latency;
+        protected final Envelope envelope;
+        // open addressing, at most half full, slots are only set while holding the monitor
+        protected volatile Topic[] table = new Topic[256];
+        protected int size = 0;
+
+        protected Topics(String prefix, Timer latency, Envelope envelope) {
+            this.prefix = prefix;
+            this.latency = latency;
+            this.envelope = envelope;
+        }
+
+        protected static int index(long id, int mask) {
+            final long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & mask;
+        }
+
+        protected Topic get(String deviceType, String device, String reading) {
+            final int d = Symbols.id(device);
+            final int r = Symbols.id(reading);
+            if (d == Symbols.NONE || r == Symbols.NONE)
+                return topic(prefix, 0, deviceType, device, reading);
+
+            final long id = ((long) d << 32) | r;
+            final Topic[] t = table;
+            final int mask = t.length - 1;
+            for (int i = index(id, mask); ; i = (i + 1) & mask) {
+                final Topic e = t[i];
+                if (e == null)
+                    break;
+                if (e.id == id) {
+                    if (e.deviceType.equals(deviceType))
+                        return e;
+                    break;
+                }
+            }
+            return put(topic(prefix, id, deviceType, device, reading));
+        }
+
+        protected static Topic topic(String prefix, long id, String deviceType, String device, String reading) {
+            final String k = STATE.equals(reading) ?
+                    AMQPEventPublisher.topic(prefix, deviceType, device) :
+                    AMQPEventPublisher.topic(prefix, deviceType, device, reading);
+            return new Topic(id, deviceType, k, AMQPEventPublisher.topic("timestamped", k));
+        }
+
+        protected synchronized Topic put(Topic e) {
+            Topic[] t = table;
+            int i = index(e.id, t.length - 1);
+            for (; t[i] != null; i = (i + 1) & (t.length - 1))
+                if (t[i].id == e.id) {
+                    t[i] = e;
+                    return e;
+                }
+            if (size == MAX_TOPICS)
+                return e;
+
+            if ((size + 1) * 2 > t.length) {
+                final Topic[] n = new Topic[t.length * 2];
+                for (Topic x : t)
+                    if (x != null)
+                        insert(n, x);
+                insert(n, e);
+                table = n;
+            } else
+                t[i] = e;
+            size++;
+            return e;
+        }
+
+        protected static void insert(Topic[] t, Topic e) {
+            int i = index(e.id, t.length - 1);
+            while (t[i] != null)
+                i = (i + 1) & (t.length - 1);
+            t[i] = e;
+        }
+    }
+
+    protected void publishDueEnvelopes() {
+        final long now = System.nanoTime();
+        final long maxDelay = envelopes.getMaxDelay().toNanos();
+        for (Topics t : topics.values())
+            if (t.envelope != null)
+                t.envelope.publishIfDue(now, maxDelay);
+    }
+
+    /**
+     * Publishes the pending envelopes.
+     */
+    @Override
+    public void close() {
+        if (envelopeTimer == null)
+            return;
+        envelopeTimer.shutdownNow();
+        for (Topics t : topics.values())
+            t.envelope.publishIfDue(System.nanoTime(), 0);
+    }
+
+    /**
+     * Events of a host collected into one message
+     * {@code {"host": "...", "events": [[deviceType, device, reading, value, lastUpdate], ...]}}, written as they
+     * arrive. {@code lastUpdate} is in the timestamp format of the timestamped values.
+     */
+    protected class Envelope {
+        protected final String host;
+        protected final String routingKey;
+        // events of the host come from its connection, derived readings and expiry
+        protected final ReentrantLock lock = new ReentrantLock();
+        protected StringWriter writer;
+        protected JsonGenerator generator;
+        protected int size = 0;
+        // System.nanoTime() of the first event
+        protected long first;
+
+        protected Envelope(String host, String routingKey) {
+            this.host = host;
+            this.routingKey = routingKey;
+        }
+
+        protected void add(long timestamp, String deviceType, String device, String reading, String value) {
+            lock.lock();
+            try {
+                if (size == 0) {
+                    first = System.nanoTime();
+                    writer = new StringWriter(256 * 64);
+                    generator = mapper.getFactory().createGenerator(writer);
+                    generator.writeStartObject();
+                    generator.writeStringField("host", host);
+                    generator.writeArrayFieldStart("events");
+                }
+                generator.writeStartArray();
+                generator.writeString(deviceType);
+                generator.writeString(device);
+                generator.writeString(reading);
+                generator.writeString(value);
+                format.write(generator, timestamp);
+                generator.writeEndArray();
+                if (++size >= envelopes.getMaxEvents())
+                    publish();
+            } catch (IOException e) {
+                log.error("Error writing envelope of {}, dropping {} events", host, size, e);
+                size = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        protected void publishIfDue(long now, long maxDelay) {
+            lock.lock();
+            try {
+                if (size > 0 && now - first >= maxDelay)
+                    publish();
+            } catch (IOException e) {
+                log.error("Error writing envelope of {}, dropping {} events", host, size, e);
+                size = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // holding the lock
+        protected void publish() throws IOException {
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.close();
+            size = 0;
+            outbox.publish(routingKey, writer.toString(), true);
+            envelopesPublished.increment();
+        }
+    }
+
+    protected static class Topic {
+        protected final long id;
+        protected final String deviceType;
+        protected final String routingKey;
+        protected final String timestamped;
+
+        protected Topic(long id, String deviceType, String routingKey, String timestamped) {
+            this.id = id;
+            this.deviceType = deviceType;
+            this.routingKey = routingKey;
+            this.timestamped = timestamped;
+        }
     }
 }
@@ -0,0 +1,212 @@
+package io.github.qsolutionsde.jfhem.amqp;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decouples event publishing from the broker: {@link #publish} never blocks.
+ *
+ * Messages are buffered in memory and published in batches by a single drain thread. If the memory buffer
+ * is full or the broker fails, messages go to the disk {@link Spool} until it is drained, keeping their order.
+ * With publisher confirms ({@code spring.rabbitmq.publisher-confirm-type: simple}) delivery is at least once: a batch
+ * counts as published when the broker confirmed all its messages, a batch failing halfway is published again.
+ * Without them messages accepted by the client but lost on the way to the broker are not noticed.
+ */
+@Slf4j
+public class AMQPOutbox implements Closeable {
+    protected final RabbitTemplate rabbit;
+    protected final OutboxConfig config;
+    protected final Spool spool;
+    protected final boolean confirms;
+
+    protected final BlockingQueue<OutboxMessage> memory;
+
+    // set while messages are in the spool, all newer messages must be spooled as well
+    protected volatile boolean spooling;
+    protected volatile boolean running = true;
+    // guards the switch between memory and spool, held while spooling to disk
+    protected final ReentrantLock lock = new ReentrantLock();
+
+    protected final Thread drainer;
+
+    protected long dropped = 0;
+
+    protected final Timer publishTime;
+    protected final Counter published;
+    protected final Counter publishFailures;
+    protected final Counter spooled;
+    protected final Counter droppedMessages;
+
+    public AMQPOutbox(RabbitTemplate rabbit, OutboxConfig config, MeterRegistry registry) throws IOException {
+        this.rabbit = rabbit;
+        this.config = config;
+        this.spool = new Spool(config);
+        this.memory = new ArrayBlockingQueue<>(config.getMemoryCapacity());
+        this.spooling = !spool.isEmpty();
+        this.confirms = rabbit.getConnectionFactory() != null && rabbit.getConnectionFactory().isSimplePublisherConfirms();
+        if (!confirms)
+            log.warn("Publisher confirms are disabled, set spring.rabbitmq.publisher-confirm-type to simple for at least once delivery");
+
+        publishTime = registry.timer("amqp.publish");
+        published = registry.counter("amqp.publish.messages");
+        publishFailures = registry.counter("amqp.publish.failures");
+        spooled = registry.counter("amqp.outbox.spooled");
+        droppedMessages = registry.counter("amqp.outbox.dropped");
+        registry.gauge("amqp.outbox.memory", memory, BlockingQueue::size);
+        registry.gauge("amqp.outbox.spooling", this, o -> o.spooling ? 1 : 0);
+
+        drainer = new Thread(this::drain, "amqp-outbox");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    public void publish(String routingKey, String payload, boolean json) {
+        final OutboxMessage m = new OutboxMessage(routingKey, payload, json);
+        lock.lock();
+        try {
+            if (!spooling && memory.offer(m))
+                return;
+
+            spooling = true;
+            spoolMessage(m);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected void spoolMessage(OutboxMessage m) {
+        try {
+            if (spool.append(m))
+                spooled.increment();
+            else {
+                droppedMessages.increment();
+                if ((++dropped % 1000) == 1)
+                    log.warn("Outbox full, dropped {} messages", dropped);
+            }
+        } catch (IOException e) {
+            log.error("Error spooling message for {}", m.getRoutingKey(), e);
+        }
+    }
+
+    protected void drain() {
+        final List<OutboxMessage> batch = new ArrayList<>(config.getBatchSize());
+        while (running) {
+            try {
+                batch.clear();
+                final OutboxMessage first = memory.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    memory.drainTo(batch, config.getBatchSize() - 1);
+                    if (!send(batch))
+                        toSpool(batch);
+                } else if (spooling)
+                    drainSpool();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Error draining outbox", e);
+            }
+        }
+    }
+
+    /**
+     * Moves a failed batch and everything behind it in memory to the spool, in order.
+     */
+    protected void toSpool(List<OutboxMessage> batch) throws InterruptedException {
+        lock.lock();
+        try {
+            spooling = true;
+            batch.forEach(this::spoolMessage);
+            final List<OutboxMessage> l = new ArrayList<>(memory.size());
+            memory.drainTo(l);
+            l.forEach(this::spoolMessage);
+        } finally {
+            lock.unlock();
+        }
+        Thread.sleep(config.getRetryDelay());
+    }
+
+    protected void drainSpool() throws IOException, InterruptedException {
+        while (running) {
+            final List<OutboxMessage> batch = spool.peek(config.getBatchSize());
+            if (batch.isEmpty()) {
+                spool.commit();
+                lock.lock();
+                try {
+                    if (spool.isEmpty() && memory.isEmpty()) {
+                        spooling = false;
+                        log.info("Outbox spool drained");
+                        return;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                continue;
+            }
+
+            if (send(batch))
+                spool.commit();
+            else
+                Thread.sleep(config.getRetryDelay());
+        }
+    }
+
+    protected boolean send(List<OutboxMessage> batch) {
+        final long start = System.nanoTime();
+        try {
+            rabbit.invoke(t -> {
+                for (OutboxMessage m : batch)
+                    t.send(m.getRoutingKey(), toMessage(m));
+                if (confirms)
+                    t.waitForConfirmsOrDie(config.getConfirmTimeout());
+                return null;
+            });
+            publishTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            published.increment(batch.size());
+            return true;
+        } catch (AmqpException e) {
+            publishFailures.increment();
+            log.warn("Error publishing {} messages, retrying: {}", batch.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    protected static Message toMessage(OutboxMessage m) {
+        final MessageProperties p = new MessageProperties();
+        p.setContentType(m.isJson() ? MessageProperties.CONTENT_TYPE_JSON : MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+        p.setContentEncoding(StandardCharsets.UTF_8.name());
+        return new Message(m.getPayload().getBytes(StandardCharsets.UTF_8), p);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        drainer.interrupt();
+        lock.lock();
+        try {
+            final List<OutboxMessage> l = new ArrayList<>(memory.size());
+            memory.drainTo(l);
+            l.forEach(this::spoolMessage);
+        } finally {
+            lock.unlock();
+        }
+        spool.close();
+    }
+}
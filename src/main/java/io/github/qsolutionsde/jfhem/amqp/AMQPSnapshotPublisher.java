@@ -0,0 +1,118 @@
+package io.github.qsolutionsde.jfhem.amqp;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.github.qsolutionsde.jfhem.data.TimestampFormat;
+import io.github.qsolutionsde.jfhem.data.TimestampedValue;
+import io.github.qsolutionsde.jfhem.state.StateRegistry;
+import io.github.qsolutionsde.jfhem.telnet.FHEMTelnetConnection;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Answers {@code update} with all readings of a host known to the {@link StateRegistry}, in the format of the
+ * envelopes: {@code {"host": ..., "events": [[deviceType, device, reading, value, lastUpdate], ...]}}.
+ *
+ * The registry only holds readings that changed since the gateway started, so the first snapshot of a host
+ * seeds it with one {@code jsonlist2}. Afterwards it is kept current by the events and the resync after
+ * reconnects.
+ */
+@Slf4j
+public class AMQPSnapshotPublisher {
+    protected final RabbitTemplate rabbit;
+    protected final StateRegistry state;
+    protected final TimestampFormat format;
+    protected final SnapshotConfig config;
+    protected final Map<String, FHEMTelnetConnection> connections = new HashMap<>();
+    protected final Set<String> seeded = ConcurrentHashMap.newKeySet();
+    protected final JsonFactory json = new JsonFactory();
+    protected final MeterRegistry registry;
+
+    public AMQPSnapshotPublisher(RabbitTemplate rabbit,
+                                 StateRegistry state,
+                                 List<FHEMTelnetConnection> cs,
+                                 TimestampFormat format,
+                                 SnapshotConfig config,
+                                 MeterRegistry registry) {
+        this.rabbit = rabbit;
+        this.state = state;
+        this.format = format;
+        this.config = config;
+        this.registry = registry;
+        cs.forEach(c -> connections.put(c.getHost().getHost(), c));
+    }
+
+    /**
+     * @return whether a snapshot was published, false if the host has no telnet connection
+     */
+    public boolean publish(String host, String routingKey) {
+        final FHEMTelnetConnection c = connections.get(host);
+        if (c == null)
+            return false;
+
+        final long start = System.nanoTime();
+        if (!seeded.contains(host))
+            seed(c);
+
+        try {
+            final ByteArrayOutputStream b = new ByteArrayOutputStream(64 * 1024);
+            try (OutputStream out = config.isCompress() ? new GZIPOutputStream(b) : b) {
+                write(host, out);
+            }
+            final MessageProperties p = new MessageProperties();
+            p.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+            if (config.isCompress())
+                p.setContentEncoding("gzip");
+            rabbit.send(routingKey, new Message(b.toByteArray(), p));
+            registry.timer("amqp.snapshot", "host", host).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            log.error("Error writing snapshot of {}", host, e);
+        }
+        return true;
+    }
+
+    protected void seed(FHEMTelnetConnection c) {
+        final String host = c.getHost().getHost();
+        try {
+            c.jsonlist2(state);
+            seeded.add(host);
+            log.info("Seeded snapshot of {} with {} devices", host, state.getDevices(host).size());
+        } catch (IOException e) {
+            log.warn("Error seeding snapshot of {}, publishing the readings received so far: {}", host, e.toString());
+        }
+    }
+
+    protected void write(String host, OutputStream out) throws IOException {
+        try (JsonGenerator g = json.createGenerator(out)) {
+            g.writeStartObject();
+            g.writeStringField("host", host);
+            g.writeArrayFieldStart("events");
+            for (Map.Entry<String, StateRegistry.DeviceState> d : state.getDevices(host).entrySet())
+                for (Map.Entry<String, TimestampedValue<String>> r : d.getValue().getReadings().entrySet()) {
+                    g.writeStartArray();
+                    g.writeString(d.getValue().getDeviceType());
+                    g.writeString(d.getKey());
+                    g.writeString(r.getKey());
+                    g.writeString(r.getValue().value());
+                    format.write(g, r.getValue().lastUpdate().toEpochMilli());
+                    g.writeEndArray();
+                }
+            g.writeEndArray();
+            g.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package io.github.qsolutionsde.jfhem.amqp;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+@Data
+public class EnvelopeConfig {
+    // publish the events of each host also in envelopes on <routingPrefix>.fhem.<host>
+    protected boolean enabled = false;
+    // an envelope is published when it holds maxEvents events or its first event waited maxDelay
+    protected int maxEvents = 500;
+    protected Duration maxDelay = Duration.ofSeconds(1);
+    protected String routingPrefix = "envelope";
+}
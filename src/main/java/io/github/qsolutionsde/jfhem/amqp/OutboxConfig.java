@@ -0,0 +1,23 @@
+package io.github.qsolutionsde.jfhem.amqp;
+
+import lombok.Data;
+
+import java.nio.file.Paths;
+
+@Data
+public class OutboxConfig {
+    public enum DropPolicy { DROP_NEWEST, DROP_OLDEST }
+
+    // events buffered in memory before spooling to disk
+    protected int memoryCapacity = 10000;
+    protected int batchSize = 100;
+    // spool directory, created when the outbox first spills to disk
+    protected String directory = Paths.get(System.getProperty("java.io.tmpdir"), "jfhem", "outbox").toString();
+    protected int segmentSize = 16 * 1024 * 1024;
+    protected long maxSize = 256L * 1024 * 1024;
+    protected DropPolicy dropPolicy = DropPolicy.DROP_NEWEST;
+    // ms to wait before retrying after a failed publish
+    protected long retryDelay = 5000;
+    // ms to wait for the broker to confirm a batch when publisher confirms are enabled
+    protected long confirmTimeout = 10000;
+}
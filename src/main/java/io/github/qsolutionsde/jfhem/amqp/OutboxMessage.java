@@ -0,0 +1,10 @@
+package io.github.qsolutionsde.jfhem.amqp;
+
+import lombok.Value;
+
+@Value
+public class OutboxMessage {
+    String routingKey;
+    String payload;
+    boolean json;
+}
@@ -0,0 +1,11 @@
+package io.github.qsolutionsde.jfhem.amqp;
+
+import lombok.Data;
+
+@Data
+public class SnapshotConfig {
+    // answer fhem.<host>.update with a snapshot of the known readings instead of forwarding update to FHEM
+    protected boolean enabled = true;
+    // gzip the snapshot, published with content encoding gzip
+    protected boolean compress = false;
+}
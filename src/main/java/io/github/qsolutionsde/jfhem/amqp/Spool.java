@@ -0,0 +1,263 @@
+package io.github.qsolutionsde.jfhem.amqp;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Disk FIFO of {@link OutboxMessage}s in memory-mapped segment files, surviving restarts.
+ *
+ * A record is {@code length, routing key length, routing key, json flag, payload}; a length of 0 ends a segment.
+ * The read position is kept in {@code position.dat}, consumed segments are deleted.
+ */
+@Slf4j
+public class Spool implements Closeable {
+    protected static final String SUFFIX = ".spool";
+
+    protected final OutboxConfig config;
+    protected final Path directory;
+
+    // null until the spool is first written to
+    protected MappedByteBuffer position;
+    protected final ReentrantLock lock = new ReentrantLock();
+
+    protected long writeSegment;
+    protected MappedByteBuffer writeBuffer;
+    protected int writePosition;
+
+    protected long readSegment;
+    protected MappedByteBuffer readBuffer;
+    protected int readPosition;
+
+    // read position after the last peek, made persistent by commit
+    protected long peekSegment;
+    protected int peekPosition;
+
+    public Spool(OutboxConfig config) throws IOException {
+        this.config = config;
+        this.directory = Paths.get(config.getDirectory());
+
+        List<Long> segments = Files.isDirectory(directory) ? segments() : Collections.emptyList();
+        if (segments.isEmpty()) {
+            // nothing pending, the directory and the first segment are created by the first append
+            writeSegment = 1;
+            writePosition = 0;
+            readSegment = writeSegment;
+            readPosition = 0;
+        } else {
+            position = mapPosition();
+            writeSegment = segments.get(segments.size() - 1);
+            writeBuffer = map(writeSegment);
+            writePosition = 0;
+            while (writePosition + 4 <= writeBuffer.limit() && writeBuffer.getInt(writePosition) > 0)
+                writePosition += 4 + writeBuffer.getInt(writePosition);
+
+            readSegment = position.getLong(0);
+            readPosition = position.getInt(8);
+            if (!segments.contains(readSegment)) {
+                readSegment = segments.get(0);
+                readPosition = 0;
+            }
+        }
+        readBuffer = readSegment == writeSegment ? writeBuffer : map(readSegment);
+        persistPosition();
+
+        if (!isEmpty())
+            log.info("Spool in {} has pending messages", directory.toAbsolutePath());
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return readSegment == writeSegment && readPosition == writePosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return false if the message was dropped because the spool is full and the drop policy is {@code DROP_NEWEST}
+     */
+    public boolean append(OutboxMessage m) throws IOException {
+        lock.lock();
+        try {
+            final byte[] key = m.getRoutingKey().getBytes(StandardCharsets.UTF_8);
+            final byte[] payload = m.getPayload().getBytes(StandardCharsets.UTF_8);
+            final int length = 2 + key.length + 1 + payload.length;
+
+            // keep room for the end marker
+            if (4 + length + 4 > config.getSegmentSize()) {
+                log.warn("Message too large for spool: {}", m.getRoutingKey());
+                return false;
+            }
+
+            if (writeBuffer == null)
+                open();
+            else if (writePosition + 4 + length + 4 > config.getSegmentSize()) {
+                while ((writeSegment - readSegment + 2) * config.getSegmentSize() > config.getMaxSize()) {
+                    if (config.getDropPolicy() == OutboxConfig.DropPolicy.DROP_OLDEST && readSegment < writeSegment) {
+                        log.warn("Spool full, dropping segment {}", readSegment);
+                        nextReadSegment();
+                        peekSegment = readSegment;
+                        peekPosition = readPosition;
+                    } else
+                        return false;
+                }
+                writeSegment++;
+                writeBuffer = map(writeSegment);
+                writePosition = 0;
+            }
+
+            final ByteBuffer b = writeBuffer.duplicate();
+            b.position(writePosition + 4);
+            b.putShort((short) key.length);
+            b.put(key);
+            b.put((byte) (m.isJson() ? 1 : 0));
+            b.put(payload);
+            writeBuffer.putInt(writePosition, length);
+            writePosition += 4 + length;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return up to {@code n} of the oldest messages, which stay in the spool until {@link #commit()}
+     */
+    public List<OutboxMessage> peek(int n) throws IOException {
+        lock.lock();
+        try {
+            final List<OutboxMessage> l = new ArrayList<>(n);
+            long segment = readSegment;
+            MappedByteBuffer buffer = readBuffer;
+            int p = readPosition;
+
+            while (l.size() < n) {
+                if (segment == writeSegment && p == writePosition)
+                    break;
+
+                final int length = p + 4 <= buffer.limit() ? buffer.getInt(p) : 0;
+                if (length == 0) {
+                    if (segment == writeSegment)
+                        break;
+                    segment++;
+                    buffer = segment == writeSegment ? writeBuffer : map(segment);
+                    p = 0;
+                    continue;
+                }
+
+                final ByteBuffer b = buffer.duplicate();
+                b.position(p + 4);
+                final byte[] key = new byte[b.getShort()];
+                b.get(key);
+                final boolean json = b.get() == 1;
+                final byte[] payload = new byte[length - 2 - key.length - 1];
+                b.get(payload);
+                l.add(new OutboxMessage(new String(key, StandardCharsets.UTF_8), new String(payload, StandardCharsets.UTF_8), json));
+                p += 4 + length;
+            }
+
+            peekSegment = segment;
+            peekPosition = p;
+            return l;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the messages returned by the last {@link #peek(int)}.
+     */
+    public void commit() throws IOException {
+        lock.lock();
+        try {
+            while (readSegment < peekSegment)
+                nextReadSegment();
+            readPosition = peekPosition;
+            persistPosition();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected void open() throws IOException {
+        Files.createDirectories(directory);
+        position = mapPosition();
+        writeBuffer = map(writeSegment);
+        readBuffer = writeBuffer;
+        persistPosition();
+        log.info("Spooling to {}", directory.toAbsolutePath());
+    }
+
+    protected void nextReadSegment() throws IOException {
+        Files.deleteIfExists(path(readSegment));
+        readSegment++;
+        readBuffer = readSegment == writeSegment ? writeBuffer : map(readSegment);
+        readPosition = 0;
+        persistPosition();
+    }
+
+    protected void persistPosition() {
+        if (position == null)
+            return;
+        position.putLong(0, readSegment);
+        position.putInt(8, readPosition);
+    }
+
+    protected Path path(long segment) {
+        return directory.resolve(String.format("%020d%s", segment, SUFFIX));
+    }
+
+    protected MappedByteBuffer mapPosition() throws IOException {
+        try (FileChannel c = FileChannel.open(directory.resolve("position.dat"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return c.map(FileChannel.MapMode.READ_WRITE, 0, 12);
+        }
+    }
+
+    protected MappedByteBuffer map(long segment) throws IOException {
+        try (FileChannel c = FileChannel.open(path(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return c.map(FileChannel.MapMode.READ_WRITE, 0, config.getSegmentSize());
+        }
+    }
+
+    protected List<Long> segments() throws IOException {
+        try (Stream<Path> s = Files.list(directory)) {
+            return s.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(SUFFIX))
+                    .map(n -> Long.parseLong(n.substring(0, n.length() - SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (writeBuffer != null) {
+                writeBuffer.force();
+                position.force();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package io.github.qsolutionsde.jfhem.cluster;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+@Data
+public class ClusterConfig {
+    protected boolean enabled = false;
+    // name of this instance in the logs, host name and process id if missing
+    protected String instance;
+    // number of shards, the telnet hosts are assigned round robin in configuration order, 0 for one per host
+    protected int shards = 0;
+    // single active consumer queues <queuePrefix>-<shard>
+    protected String queuePrefix = "fhem-shard";
+    // lease tokens sent to every shard queue, a shard is released if no token arrived within the lease timeout
+    protected Duration heartbeatInterval = Duration.ofSeconds(2);
+    protected Duration leaseTimeout = Duration.ofSeconds(10);
+    // readings updated within this time before taking over a shard are resynchronized
+    protected Duration takeoverResync = Duration.ofMinutes(10);
+}
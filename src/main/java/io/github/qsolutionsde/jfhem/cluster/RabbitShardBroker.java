@@ -0,0 +1,43 @@
+package io.github.qsolutionsde.jfhem.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Shard queues on RabbitMQ, declared with {@code x-single-active-consumer} by the gateway.
+ */
+@Slf4j
+public class RabbitShardBroker implements ShardBroker {
+    protected final ConnectionFactory factory;
+    protected final RabbitTemplate rabbit;
+
+    public RabbitShardBroker(ConnectionFactory factory, RabbitTemplate rabbit) {
+        this.factory = factory;
+        this.rabbit = rabbit;
+    }
+
+    @Override
+    public Consumer consume(String queue, Handler handler) {
+        final SimpleMessageListenerContainer c = new SimpleMessageListenerContainer(factory);
+        c.setQueueNames(queue);
+        c.setConcurrentConsumers(1);
+        c.setMessageListener(m -> handler.message(m.getMessageProperties().getReceivedRoutingKey(),
+                new String(m.getBody(), StandardCharsets.UTF_8)));
+        c.afterPropertiesSet();
+        c.start();
+        log.info("Consuming shard queue {}", queue);
+        return c::stop;
+    }
+
+    @Override
+    public void send(String queue, String payload, long ttlMillis) {
+        rabbit.convertAndSend("", queue, payload, m -> {
+            m.getMessageProperties().setExpiration(Long.toString(ttlMillis));
+            return m;
+        });
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.qsolutionsde.jfhem.cluster;
+
+/**
+ * The part of the message broker the shards are coordinated with. Shard queues have a single active consumer:
+ * of all instances consuming a queue, only one receives its messages, the next one takes over when it goes away.
+ */
+public interface ShardBroker {
+
+    @FunctionalInterface
+    interface Handler {
+        /**
+         * @param routingKey the queue name for messages sent with {@link #send}, the routing key of the
+         *                   topic exchange otherwise
+         */
+        void message(String routingKey, String payload);
+    }
+
+    @FunctionalInterface
+    interface Consumer {
+        void cancel();
+    }
+
+    /** Starts consuming a shard queue. */
+    Consumer consume(String queue, Handler handler);
+
+    /** Sends a message directly to a queue, dropped if not consumed within {@code ttlMillis}. */
+    void send(String queue, String payload, long ttlMillis);
+}
@@ -0,0 +1,233 @@
+package io.github.qsolutionsde.jfhem.cluster;
+
+import io.github.qsolutionsde.jfhem.data.TimestampClock;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads the FHEM hosts over the gateway instances of a cluster in disjoint shards.
+ *
+ * Every instance consumes the single active consumer queue of every shard, so the broker delivers the messages of
+ * a shard to one instance only and fails over to another one when it goes away. The queue of a shard is bound
+ * to the commands of its hosts, and every instance sends lease tokens to all shard queues: the instance receiving
+ * the tokens of a shard owns it, until no token arrived within the lease timeout. The owner receives the events
+ * of the hosts of the shard and executes their commands.
+ *
+ * The broker activates the consumer registered first, so the tokens, naming their sender, also tell the owners
+ * the live instances: an instance owning more than its share of the shards hands one shard per lease timeout on
+ * by consuming its queue again, behind the other consumers.
+ *
+ * An instance losing the broker releases its shards after the lease timeout, which may overlap with the take-over
+ * by another instance.
+ */
+@Slf4j
+public class ShardManager implements Closeable {
+    public static final String[] COMMANDS = { "set.#", "setreading.#", "get.#", "shutdown.#", "update" };
+
+    public interface Listener {
+        /**
+         * @param since epoch millis from which readings of the hosts should be resynchronized
+         */
+        void claimed(int shard, List<String> hosts, long since);
+
+        void released(int shard, List<String> hosts);
+    }
+
+    protected final ClusterConfig config;
+    @Getter
+    protected final String instance;
+    @Getter
+    protected final List<List<String>> shards;
+    protected final Map<String, Integer> shardOfHost = new HashMap<>();
+    protected final ShardBroker broker;
+    protected final ShardBroker.Handler commands;
+    protected final Listener listener;
+
+    // System.nanoTime() of the last token per shard
+    protected final long[] lastToken;
+    protected final boolean[] owned;
+    protected final ShardBroker.Consumer[] consumers;
+    // incremented when consuming a shard queue again, messages of the earlier consumer don't claim the shard
+    protected final int[] generations;
+    // System.nanoTime() of the last token per instance
+    protected final Map<String, Long> members = new HashMap<>();
+    protected long lastHandOff = 0;
+    protected boolean tokensFailing = false;
+    protected final ScheduledExecutorService timer;
+
+    /**
+     * @param hosts    telnet hosts in configuration order
+     * @param commands executes the commands received for owned hosts
+     */
+    public ShardManager(ClusterConfig config, List<String> hosts, ShardBroker broker,
+                        ShardBroker.Handler commands, Listener listener, MeterRegistry registry) {
+        this.config = config;
+        this.instance = config.getInstance() != null ? config.getInstance() : ManagementFactory.getRuntimeMXBean().getName();
+        this.shards = assign(hosts, config.getShards());
+        for (int s = 0; s < shards.size(); s++)
+            for (String h : shards.get(s))
+                shardOfHost.put(h, s);
+        this.broker = broker;
+        this.commands = commands;
+        this.listener = listener;
+        this.lastToken = new long[shards.size()];
+        this.owned = new boolean[shards.size()];
+        this.consumers = new ShardBroker.Consumer[shards.size()];
+        this.generations = new int[shards.size()];
+        registry.gauge("fhem.cluster.shards.owned", this, m -> m.getOwnedShards().size());
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "shards-" + instance);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** @return the hosts per shard, assigned round robin, one shard per host if {@code shards} is 0 */
+    public static List<List<String>> assign(List<String> hosts, int shards) {
+        final int n = shards > 0 ? shards : hosts.size();
+        final List<List<String>> l = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            l.add(new ArrayList<>());
+        for (int i = 0; i < hosts.size(); i++)
+            l.get(i % n).add(hosts.get(i));
+        return l;
+    }
+
+    public static String queue(ClusterConfig config, int shard) {
+        return config.getQueuePrefix() + "-" + shard;
+    }
+
+    /** @return the routing keys of the commands of {@code hosts} */
+    public static List<String> routingKeys(String prefix, List<String> hosts) {
+        final List<String> l = new ArrayList<>();
+        for (String h : hosts)
+            for (String c : COMMANDS)
+                l.add(prefix + "." + h + "." + c);
+        return l;
+    }
+
+    public void start() {
+        log.info("Instance {} joining the cluster with {} shards", instance, shards.size());
+        for (int s = 0; s < shards.size(); s++)
+            consume(s);
+        final long period = config.getHeartbeatInterval().toMillis();
+        timer.scheduleWithFixedDelay(this::tick, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** @return whether this instance owns the shard of {@code host}, true for hosts of no shard */
+    public synchronized boolean isOwned(String host) {
+        final Integer s = shardOfHost.get(host);
+        return s == null || owned[s];
+    }
+
+    public synchronized Set<Integer> getOwnedShards() {
+        final Set<Integer> r = new TreeSet<>();
+        for (int s = 0; s < owned.length; s++)
+            if (owned[s])
+                r.add(s);
+        return r;
+    }
+
+    protected synchronized void consume(int s) {
+        final int g = ++generations[s];
+        final String q = queue(config, s);
+        consumers[s] = broker.consume(q, (key, payload) -> message(s, g, q, key, payload));
+    }
+
+    protected void message(int shard, int generation, String queue, String key, String payload) {
+        final boolean token = queue.equals(key);
+        // messages of a shard only arrive at its active consumer
+        synchronized (this) {
+            if (generation == generations[shard]) {
+                final long now = System.nanoTime();
+                lastToken[shard] = now;
+                if (token)
+                    members.put(payload, now);
+                if (!owned[shard])
+                    claim(shard);
+            }
+        }
+        if (!token)
+            commands.message(key, payload);
+    }
+
+    protected void tick() {
+        try {
+            for (int s = 0; s < shards.size(); s++)
+                broker.send(queue(config, s), instance, config.getLeaseTimeout().toMillis());
+            tokensFailing = false;
+        } catch (RuntimeException e) {
+            if (!tokensFailing)
+                log.warn("Error sending lease tokens: {}", e.toString());
+            tokensFailing = true;
+        }
+        synchronized (this) {
+            final long now = System.nanoTime();
+            final long lease = config.getLeaseTimeout().toNanos();
+            for (int s = 0; s < shards.size(); s++)
+                if (owned[s] && now - lastToken[s] > lease)
+                    release(s);
+
+            members.values().removeIf(t -> now - t > lease);
+            final int owns = getOwnedShards().size();
+            final int share = (shards.size() + members.size() - 1) / Math.max(1, members.size());
+            if (owns > share && now - lastHandOff > lease) {
+                lastHandOff = now;
+                handOff();
+            }
+        }
+    }
+
+    // releases the last owned shard and queues up behind the other consumers of its queue
+    protected void handOff() {
+        for (int s = owned.length - 1; s >= 0; s--)
+            if (owned[s]) {
+                log.info("Instance {} handing off shard {}, {} instances", instance, s, members.size());
+                release(s);
+                consumers[s].cancel();
+                consume(s);
+                return;
+            }
+    }
+
+    protected void claim(int s) {
+        owned[s] = true;
+        log.info("Instance {} owns shard {} with hosts {}", instance, s, shards.get(s));
+        try {
+            listener.claimed(s, shards.get(s), TimestampClock.millis() - config.getTakeoverResync().toMillis());
+        } catch (RuntimeException e) {
+            log.error("Error claiming shard {}", s, e);
+        }
+    }
+
+    protected void release(int s) {
+        owned[s] = false;
+        log.info("Instance {} released shard {} with hosts {}", instance, s, shards.get(s));
+        try {
+            listener.released(s, shards.get(s));
+        } catch (RuntimeException e) {
+            log.error("Error releasing shard {}", s, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        synchronized (this) {
+            for (ShardBroker.Consumer c : consumers)
+                if (c != null)
+                    c.cancel();
+            for (int s = 0; s < owned.length; s++)
+                if (owned[s])
+                    release(s);
+        }
+    }
+}
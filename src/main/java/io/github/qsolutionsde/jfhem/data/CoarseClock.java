@@ -0,0 +1,63 @@
+package io.github.qsolutionsde.jfhem.data;
+
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * UTC clock reading the system time only once per {@code resolution}, in a daemon thread. Reading it is
+ * a volatile load, at the price of lagging up to {@code resolution} behind.
+ */
+public class CoarseClock extends Clock implements Closeable {
+    private final long resolution;
+    private final Thread ticker;
+
+    private volatile long now = System.currentTimeMillis();
+    private volatile boolean running = true;
+
+    public CoarseClock(@NonNull Duration resolution) {
+        this.resolution = Math.max(1, resolution.toMillis());
+        ticker = new Thread(this::tick, "coarse-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    private void tick() {
+        while (running) {
+            now = System.currentTimeMillis();
+            try {
+                Thread.sleep(resolution);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public long millis() { return now; }
+
+    @Override
+    public Instant instant() { return Instant.ofEpochMilli(now); }
+
+    @Override
+    public ZoneId getZone() { return ZoneOffset.UTC; }
+
+    /** @return a system clock, only UTC is coarse */
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return ZoneOffset.UTC.equals(zone) ? this : Clock.system(zone);
+    }
+
+    public Duration getResolution() { return Duration.ofMillis(resolution); }
+
+    @Override
+    public void close() {
+        running = false;
+        ticker.interrupt();
+    }
+}
@@ -0,0 +1,242 @@
+package io.github.qsolutionsde.jfhem.data;
+
+/**
+ * Exception-free and allocation-free parsing of numeric FHEM values.
+ *
+ * A number is an optional sign, digits with {@code .} or {@code ,} as decimal separator and an optional
+ * exponent. Unless parsing strictly, it may be followed by a unit, e.g. {@code 21.5 °C}, {@code 21,5°C} or {@code 45%}.
+ * As with the former {@code DecimalFormat} and {@code Double.parseDouble} parsing, thousands separators before a
+ * decimal separator of the other kind ({@code 1.234,5}), a trailing separator ({@code 5.}), {@code Infinity} and,
+ * when parsing strictly, a {@code d} or {@code f} suffix are accepted. {@code NaN} is not a number here, see
+ * {@link #isNaN(CharSequence)}.
+ */
+public final class NumberParser {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private static final long MAX_EXACT = 1L << 53;
+
+    private static final String INFINITY = "Infinity";
+    private static final String NAN = "NaN";
+
+    private NumberParser() {}
+
+    /**
+     * @return the value of {@code s}, optionally followed by a unit, or {@code NaN} if it is not numeric
+     */
+    public static double parseDouble(CharSequence s) {
+        return parseDouble(s, true);
+    }
+
+    /**
+     * @param allowUnit whether text may follow the number
+     * @return the value of {@code s} or {@code NaN} if it is not numeric
+     */
+    public static double parseDouble(CharSequence s, boolean allowUnit) {
+        final int n = s.length();
+        int i = skipSpace(s, 0);
+
+        boolean negative = false;
+        if (i < n && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+
+        if (startsWith(s, i, INFINITY))
+            return isEnd(s, i + INFINITY.length(), allowUnit) ?
+                    (negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY) : Double.NaN;
+
+        final int start = i;
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = 0;
+
+        for (char c; i < n && isDigit(c = s.charAt(i)); i++, digits++)
+            mantissa = mantissa * 10 + (c - '0');
+
+        // 1.234,5 or 1,234,567.8
+        for (int g = digits > 0 ? groups(s, i) : 0; g > 0; g--) {
+            i++;
+            for (int j = 0; j < 3; j++, i++, digits++)
+                mantissa = mantissa * 10 + (s.charAt(i) - '0');
+        }
+
+        if (i + 1 < n && isSeparator(s.charAt(i)) && isDigit(s.charAt(i + 1))) {
+            i++;
+            for (char c; i < n && isDigit(c = s.charAt(i)); i++, digits++, fraction++)
+                mantissa = mantissa * 10 + (c - '0');
+        } else if (digits > 0 && i < n && isSeparator(s.charAt(i))
+                && (i + 1 == n || !isDigit(s.charAt(i + 1)) && !isSeparator(s.charAt(i + 1))))
+            // 5.
+            i++;
+
+        if (digits == 0)
+            return Double.NaN;
+
+        int exponent = 0;
+        if (i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            int j = i + 1;
+            boolean negativeExponent = false;
+            if (j < n && (s.charAt(j) == '-' || s.charAt(j) == '+')) {
+                negativeExponent = s.charAt(j) == '-';
+                j++;
+            }
+            if (j < n && isDigit(s.charAt(j))) {
+                for (char c; j < n && isDigit(c = s.charAt(j)); j++)
+                    if (exponent < 10000)
+                        exponent = exponent * 10 + (c - '0');
+                if (negativeExponent)
+                    exponent = -exponent;
+                i = j;
+            }
+        }
+
+        // suffixes of Java literals, accepted by Double.parseDouble
+        if (!allowUnit && i < n && "dDfF".indexOf(s.charAt(i)) >= 0)
+            i++;
+
+        if (!isEnd(s, i, allowUnit))
+            return Double.NaN;
+
+        double d;
+        final int scale = exponent - fraction;
+        if (digits <= 18 && mantissa < MAX_EXACT && scale >= -22 && scale <= 22)
+            d = scale >= 0 ? mantissa * POWERS_OF_TEN[scale] : mantissa / POWERS_OF_TEN[-scale];
+        else
+            d = parseDigits(s, start, scale);
+
+        return negative ? -d : d;
+    }
+
+    // the digits from start up to the exponent, without separators, scaled by 10^scale
+    private static double parseDigits(CharSequence s, int start, int scale) {
+        final StringBuilder b = new StringBuilder(s.length() + 8);
+        for (int i = start; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (isDigit(c))
+                b.append(c);
+            else if (!isSeparator(c))
+                break;
+        }
+        return Double.parseDouble(b.append('E').append(scale).toString());
+    }
+
+    /**
+     * Number of thousands groups, a separator and three digits each, at {@code i}. Only counted if a decimal
+     * separator of the other kind follows, as {@code 1.234} is a decimal number.
+     */
+    private static int groups(CharSequence s, int i) {
+        final int n = s.length();
+        if (i >= n || !isSeparator(s.charAt(i)))
+            return 0;
+        final char g = s.charAt(i);
+        int groups = 0;
+        while (i + 3 < n && s.charAt(i) == g
+                && isDigit(s.charAt(i + 1)) && isDigit(s.charAt(i + 2)) && isDigit(s.charAt(i + 3))) {
+            groups++;
+            i += 4;
+        }
+        return i < n && isSeparator(s.charAt(i)) && s.charAt(i) != g ? groups : 0;
+    }
+
+    /**
+     * @return whether {@code s} is {@code NaN}, which {@link #parseDouble(CharSequence)} cannot tell from an invalid
+     * value
+     */
+    public static boolean isNaN(CharSequence s) {
+        int i = skipSpace(s, 0);
+        if (i < s.length() && (s.charAt(i) == '-' || s.charAt(i) == '+'))
+            i++;
+        return startsWith(s, i, NAN) && skipSpace(s, i + NAN.length()) == s.length();
+    }
+
+    /**
+     * @return whether {@code s} is an integer fitting into a long, optionally followed by a unit
+     */
+    public static boolean isLong(CharSequence s, boolean allowUnit) {
+        final int n = s.length();
+        int i = skipSpace(s, 0);
+
+        if (i < n && (s.charAt(i) == '-' || s.charAt(i) == '+'))
+            i++;
+
+        long l = 0;
+        int digits = 0;
+        for (char c; i < n && isDigit(c = s.charAt(i)); i++, digits++) {
+            if (l > (Long.MAX_VALUE - (c - '0')) / 10)
+                return false;
+            l = l * 10 + (c - '0');
+        }
+
+        // 1e3 is a double, not 1 with unit e3
+        if (i + 1 < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')
+                && (isDigit(s.charAt(i + 1)) || s.charAt(i + 1) == '-' || s.charAt(i + 1) == '+'))
+            return false;
+
+        return digits > 0 && isEnd(s, i, allowUnit);
+    }
+
+    /**
+     * @return the value of {@code s} or {@code ifInvalid} if {@link #isLong(CharSequence, boolean)} does not hold
+     */
+    public static long parseLong(CharSequence s, boolean allowUnit, long ifInvalid) {
+        if (!isLong(s, allowUnit))
+            return ifInvalid;
+
+        final int n = s.length();
+        int i = skipSpace(s, 0);
+
+        boolean negative = false;
+        if (s.charAt(i) == '-' || s.charAt(i) == '+') {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+
+        long l = 0;
+        for (char c; i < n && isDigit(c = s.charAt(i)); i++)
+            l = l * 10 + (c - '0');
+
+        return negative ? -l : l;
+    }
+
+    /**
+     * The number ends at {@code i}: what follows must be blank or, if allowed, a unit.
+     */
+    private static boolean isEnd(CharSequence s, int i, boolean allowUnit) {
+        final int n = s.length();
+        int j = skipSpace(s, i);
+        if (j == n)
+            return true;
+        if (!allowUnit)
+            return false;
+
+        char c = s.charAt(j);
+        // 1.2.3, 12:30, 2020-01-01 or two numbers are no numbers with unit
+        return !(isDigit(c) || isSeparator(c) || c == ':' || c == '-' || c == '+' || c == '/');
+    }
+
+    private static boolean startsWith(CharSequence s, int i, String prefix) {
+        if (i + prefix.length() > s.length())
+            return false;
+        for (int j = 0; j < prefix.length(); j++)
+            if (s.charAt(i + j) != prefix.charAt(j))
+                return false;
+        return true;
+    }
+
+    private static int skipSpace(CharSequence s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i)))
+            i++;
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '.' || c == ',';
+    }
+}
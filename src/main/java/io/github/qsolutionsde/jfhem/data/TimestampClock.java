@@ -0,0 +1,24 @@
+package io.github.qsolutionsde.jfhem.data;
+
+import lombok.NonNull;
+
+import java.time.Clock;
+import java.time.Instant;
+
+/**
+ * The clock used to timestamp and age values, the system clock unless replaced, e.g. by a {@link CoarseClock}
+ * or a fixed clock in tests.
+ */
+public final class TimestampClock {
+    private static volatile Clock clock = Clock.systemUTC();
+
+    private TimestampClock() {}
+
+    public static Clock get() { return clock; }
+
+    public static void set(@NonNull Clock c) { clock = c; }
+
+    public static long millis() { return clock.millis(); }
+
+    public static Instant instant() { return clock.instant(); }
+}
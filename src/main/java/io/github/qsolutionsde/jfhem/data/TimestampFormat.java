@@ -0,0 +1,175 @@
+package io.github.qsolutionsde.jfhem.data;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+
+/**
+ * Format of the {@code lastUpdate} of serialized timestamped values, all in UTC.
+ *
+ * {@link #parse(CharSequence)} accepts every format, so readers need not know which one the writer used.
+ */
+public enum TimestampFormat {
+    /** {@code 2020-06-28 12:00:00}, the original format */
+    SECONDS,
+    /** {@code 2020-06-28T12:00:00.123Z} */
+    ISO_MILLIS,
+    /** epoch millis as JSON number */
+    EPOCH_MILLIS;
+
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final int[] DAYS_IN_MONTH = { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+    public void write(JsonGenerator jgen, String field, long millis) throws IOException {
+        jgen.writeFieldName(field);
+        write(jgen, millis);
+    }
+
+    /** Writes {@code millis} as value, e.g. an array element. */
+    public void write(JsonGenerator jgen, long millis) throws IOException {
+        if (this == EPOCH_MILLIS) {
+            jgen.writeNumber(millis);
+            return;
+        }
+        final char[] c = new char[24];
+        jgen.writeString(c, 0, format(millis, this == ISO_MILLIS, c));
+    }
+
+    public String format(long millis) {
+        if (this == EPOCH_MILLIS)
+            return Long.toString(millis);
+        final char[] c = new char[24];
+        return new String(c, 0, format(millis, this == ISO_MILLIS, c));
+    }
+
+    private static int format(long millis, boolean iso, char[] c) {
+        final long seconds = Math.floorDiv(millis, 1000L);
+        final int ms = (int) Math.floorMod(millis, 1000L);
+        final long days = Math.floorDiv(seconds, 86400L);
+        int s = (int) Math.floorMod(seconds, 86400L);
+
+        // civil from days, see http://howardhinnant.github.io/date_algorithms.html
+        final long z = days + 719468;
+        final long era = Math.floorDiv(z, 146097L);
+        final long doe = z - era * 146097;
+        final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final long mp = (5 * doy + 2) / 153;
+        final int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        final int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        final long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year < 0 || year > 9999)
+            throw new IllegalArgumentException("Year out of range: " + year);
+
+        put4(c, 0, (int) year);
+        c[4] = '-';
+        put2(c, 5, month);
+        c[7] = '-';
+        put2(c, 8, day);
+        c[10] = iso ? 'T' : ' ';
+        put2(c, 11, s / 3600);
+        c[13] = ':';
+        put2(c, 14, s / 60 % 60);
+        c[16] = ':';
+        put2(c, 17, s % 60);
+        if (!iso)
+            return 19;
+        c[19] = '.';
+        c[20] = (char) ('0' + ms / 100);
+        put2(c, 21, ms % 100);
+        c[23] = 'Z';
+        return 24;
+    }
+
+    private static void put2(char[] c, int i, int v) {
+        c[i] = (char) ('0' + v / 10);
+        c[i + 1] = (char) ('0' + v % 10);
+    }
+
+    private static void put4(char[] c, int i, int v) {
+        put2(c, i, v / 100);
+        put2(c, i + 2, v % 100);
+    }
+
+    /**
+     * Parses {@code yyyy-MM-dd HH:mm:ss}, optionally with {@code T} as separator, fraction of seconds and
+     * {@code Z}, or epoch millis.
+     *
+     * @return epoch millis or {@link #INVALID}
+     */
+    public static long parse(CharSequence s) {
+        return parse(s, 0, s.length());
+    }
+
+    /**
+     * Parses the region {@code [from, to)} of {@code s} like {@link #parse(CharSequence)}, without copying it.
+     */
+    public static long parse(CharSequence s, int from, int to) {
+        if (to == from)
+            return INVALID;
+
+        if (to - from < 19 || s.charAt(from + 4) != '-')
+            return NumberParser.parseLong(s.subSequence(from, to), false, INVALID);
+
+        if (s.charAt(from + 7) != '-' || (s.charAt(from + 10) != ' ' && s.charAt(from + 10) != 'T')
+                || s.charAt(from + 13) != ':' || s.charAt(from + 16) != ':')
+            return INVALID;
+
+        final int year = digits(s, from, 4);
+        final int month = digits(s, from + 5, 2);
+        final int day = digits(s, from + 8, 2);
+        final int hour = digits(s, from + 11, 2);
+        final int minute = digits(s, from + 14, 2);
+        final int second = digits(s, from + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month - 1]
+                || (month == 2 && day == 29 && !isLeapYear(year))
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59)
+            return INVALID;
+
+        int i = from + 19;
+        int ms = 0;
+        if (i < to && s.charAt(i) == '.') {
+            i++;
+            int d = 0;
+            for (; i < to && s.charAt(i) >= '0' && s.charAt(i) <= '9'; i++, d++)
+                if (d < 3)
+                    ms = ms * 10 + (s.charAt(i) - '0');
+            if (d == 0)
+                return INVALID;
+            for (; d < 3; d++)
+                ms *= 10;
+        }
+        if (i < to && s.charAt(i) == 'Z')
+            i++;
+        if (i != to)
+            return INVALID;
+
+        return (daysFromCivil(year, month, day) * 86400L + hour * 3600 + minute * 60 + second) * 1000L + ms;
+    }
+
+    private static int digits(CharSequence s, int from, int count) {
+        int v = 0;
+        for (int i = from; i < from + count; i++) {
+            final char c = s.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    private static long daysFromCivil(int year, int month, int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = Math.floorDiv(y, 400);
+        final int yoe = y - era * 400;
+        final int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.qsolutionsde.jfhem.data;
+
+import java.time.Duration;
+import java.time.Instant;
+
+public final class TimestampedBoolean extends TimestampedPrimitive implements Comparable<TimestampedBoolean> {
+    public static final TimestampedBoolean NULL = new TimestampedBoolean();
+
+    private final boolean value;
+
+    public TimestampedBoolean(boolean value) {
+        this(value, TimestampClock.millis());
+    }
+
+    public TimestampedBoolean(boolean value, Instant lastUpdate) {
+        this(value, millis(lastUpdate));
+    }
+
+    public TimestampedBoolean(boolean value, long lastUpdate) {
+        super(true, lastUpdate);
+        this.value = value;
+    }
+
+    private TimestampedBoolean() {
+        super(false, NO_UPDATE);
+        this.value = false;
+    }
+
+    /** @return the value, {@code false} if invalid */
+    public boolean value() { return value; }
+
+    public boolean value(boolean ifInvalid) { return valid ? value : ifInvalid; }
+
+    public boolean isTrue() { return valid && value; }
+
+    public boolean isTrue(Duration maxAge) { return !isExpired(maxAge) && value; }
+
+    public boolean isFalse() { return valid && !value; }
+
+    public boolean isFalse(Duration maxAge) { return !isExpired(maxAge) && !value; }
+
+    @Override
+    public TimestampedValue<Boolean> toTimestampedValue() {
+        return valid ? new TimestampedValue<>(value, lastUpdate()) : TimestampedValue.NULL();
+    }
+
+    public static TimestampedBoolean of(TimestampedValue<?> t) {
+        if (t == null || t.isInvalid())
+            return NULL;
+
+        TimestampedValue<Boolean> b = t.castToBoolean();
+        return b.isValid() ? new TimestampedBoolean(b.value(), b.lastUpdate()) : NULL;
+    }
+
+    @Override
+    public int compareTo(TimestampedBoolean o) {
+        if (valid && o.valid)
+            return Boolean.compare(value, o.value);
+        return 0;
+    }
+}
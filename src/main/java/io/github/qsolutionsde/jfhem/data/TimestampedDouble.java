@@ -0,0 +1,62 @@
+package io.github.qsolutionsde.jfhem.data;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.DoublePredicate;
+
+public final class TimestampedDouble extends TimestampedPrimitive implements Comparable<TimestampedDouble> {
+    public static final TimestampedDouble NULL = new TimestampedDouble();
+
+    private final double value;
+
+    public TimestampedDouble(double value) {
+        this(value, TimestampClock.millis());
+    }
+
+    public TimestampedDouble(double value, Instant lastUpdate) {
+        this(value, millis(lastUpdate));
+    }
+
+    public TimestampedDouble(double value, long lastUpdate) {
+        super(true, lastUpdate);
+        this.value = value;
+    }
+
+    private TimestampedDouble() {
+        super(false, NO_UPDATE);
+        this.value = Double.NaN;
+    }
+
+    /** @return the value, {@code NaN} if invalid */
+    public double value() { return value; }
+
+    public double value(double ifInvalid) { return valid ? value : ifInvalid; }
+
+    public boolean is(DoublePredicate test) {
+        return valid && test.test(value);
+    }
+
+    public boolean is(DoublePredicate test, Duration maxAge) {
+        return !isExpired(maxAge) && test.test(value);
+    }
+
+    @Override
+    public TimestampedValue<Double> toTimestampedValue() {
+        return valid ? new TimestampedValue<>(value, lastUpdate()) : TimestampedValue.NULL();
+    }
+
+    public static TimestampedDouble of(TimestampedValue<?> t) {
+        if (t == null || t.isInvalid())
+            return NULL;
+
+        TimestampedValue<Double> d = t.castToDouble();
+        return d.isValid() ? new TimestampedDouble(d.value(), d.lastUpdate()) : NULL;
+    }
+
+    @Override
+    public int compareTo(TimestampedDouble o) {
+        if (valid && o.valid)
+            return Double.compare(value, o.value);
+        return 0;
+    }
+}
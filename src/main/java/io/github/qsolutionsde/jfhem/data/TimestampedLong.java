@@ -0,0 +1,62 @@
+package io.github.qsolutionsde.jfhem.data;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.LongPredicate;
+
+public final class TimestampedLong extends TimestampedPrimitive implements Comparable<TimestampedLong> {
+    public static final TimestampedLong NULL = new TimestampedLong();
+
+    private final long value;
+
+    public TimestampedLong(long value) {
+        this(value, TimestampClock.millis());
+    }
+
+    public TimestampedLong(long value, Instant lastUpdate) {
+        this(value, millis(lastUpdate));
+    }
+
+    public TimestampedLong(long value, long lastUpdate) {
+        super(true, lastUpdate);
+        this.value = value;
+    }
+
+    private TimestampedLong() {
+        super(false, NO_UPDATE);
+        this.value = 0L;
+    }
+
+    /** @return the value, {@code 0} if invalid */
+    public long value() { return value; }
+
+    public long value(long ifInvalid) { return valid ? value : ifInvalid; }
+
+    public boolean is(LongPredicate test) {
+        return valid && test.test(value);
+    }
+
+    public boolean is(LongPredicate test, Duration maxAge) {
+        return !isExpired(maxAge) && test.test(value);
+    }
+
+    @Override
+    public TimestampedValue<Long> toTimestampedValue() {
+        return valid ? new TimestampedValue<>(value, lastUpdate()) : TimestampedValue.NULL();
+    }
+
+    public static TimestampedLong of(TimestampedValue<?> t) {
+        if (t == null || t.isInvalid())
+            return NULL;
+
+        TimestampedValue<Long> l = t.castToLong();
+        return l.isValid() ? new TimestampedLong(l.value(), l.lastUpdate()) : NULL;
+    }
+
+    @Override
+    public int compareTo(TimestampedLong o) {
+        if (valid && o.valid)
+            return Long.compare(value, o.value);
+        return 0;
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.qsolutionsde.jfhem.data;
+
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Base of the primitive specializations of {@link TimestampedValue}.
+ *
+ * The value is held unboxed and the last update as epoch millis, so a reading is a single object
+ * instead of value, boxed value and {@link Instant}.
+ */
+public abstract class TimestampedPrimitive {
+    protected static final long NO_UPDATE = Long.MIN_VALUE;
+
+    protected final boolean valid;
+    protected final long lastUpdate;
+
+    protected TimestampedPrimitive(boolean valid, long lastUpdate) {
+        this.valid = valid;
+        this.lastUpdate = lastUpdate;
+    }
+
+    public boolean isInvalid() { return !valid; }
+    public boolean isValid()   { return valid; }
+
+    public long lastUpdateMillis() { return lastUpdate; }
+
+    public Instant lastUpdate() {
+        return lastUpdate == NO_UPDATE ? null : Instant.ofEpochMilli(lastUpdate);
+    }
+
+    public Duration age() {
+        return lastUpdate == NO_UPDATE ?
+                ChronoUnit.FOREVER.getDuration() :
+                Duration.ofMillis(TimestampClock.millis() - lastUpdate);
+    }
+
+    public long ageMillis(long now) {
+        return lastUpdate == NO_UPDATE ? Long.MAX_VALUE : now - lastUpdate;
+    }
+
+    public boolean isExpired(@NonNull Duration maxAge) {
+        return isExpired(maxAge.toMillis(), TimestampClock.millis());
+    }
+
+    public boolean isExpired(long maxAgeMillis, long now) {
+        return !valid || ageMillis(now) > maxAgeMillis;
+    }
+
+    public abstract TimestampedValue<?> toTimestampedValue();
+
+    public <S extends Comparable<S>> TimestampedValue<S> castTo(Class<S> valueType) {
+        return toTimestampedValue().castTo(valueType);
+    }
+
+    protected static long millis(Instant i) {
+        return i == null ? TimestampClock.millis() : i.toEpochMilli();
+    }
+}
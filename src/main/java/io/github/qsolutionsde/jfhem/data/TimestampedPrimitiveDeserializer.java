@@ -0,0 +1,30 @@
+package io.github.qsolutionsde.jfhem.data;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * Reads the primitive specializations from the {@link TimestampedValue} format, converting the value
+ * the same way as the casts of {@link TimestampedValue}.
+ */
+public class TimestampedPrimitiveDeserializer<T extends TimestampedPrimitive> extends StdDeserializer<T> {
+
+    private final TimestampedValueDeserializer delegate = new TimestampedValueDeserializer();
+
+    private final Function<TimestampedValue<?>, T> conversion;
+
+    public TimestampedPrimitiveDeserializer(Class<T> vc, Function<TimestampedValue<?>, T> conversion) {
+        super(vc);
+        this.conversion = conversion;
+    }
+
+    @Override
+    public T deserialize(JsonParser jp, DeserializationContext ctxt)
+            throws IOException {
+        return conversion.apply(delegate.deserialize(jp, ctxt));
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.qsolutionsde.jfhem.data;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes the primitive specializations in the same format as {@link TimestampedValueSerializer}.
+ */
+@Slf4j
+public class TimestampedPrimitiveSerializer extends StdSerializer<TimestampedPrimitive> {
+    private final TimestampFormat format;
+
+    public TimestampedPrimitiveSerializer() {
+        this(TimestampFormat.SECONDS);
+    }
+
+    public TimestampedPrimitiveSerializer(TimestampFormat format) {
+        super(TimestampedPrimitive.class);
+        this.format = format;
+    }
+
+    @Override
+    public void serialize(
+            TimestampedPrimitive value, JsonGenerator jgen, SerializerProvider provider) {
+
+        try {
+            if (value.isValid()) {
+                jgen.writeStartObject();
+                if (value instanceof TimestampedDouble)
+                    jgen.writeNumberField("value", ((TimestampedDouble) value).value());
+                else if (value instanceof TimestampedLong)
+                    jgen.writeNumberField("value", ((TimestampedLong) value).value());
+                else if (value instanceof TimestampedBoolean)
+                    jgen.writeBooleanField("value", ((TimestampedBoolean) value).value());
+
+                format.write(jgen, "lastUpdate", value.lastUpdateMillis());
+                jgen.writeEndObject();
+            } else
+                log.warn("Invalid timestamped value for serialization");
+        } catch (Exception e) {
+            log.error("Error serializing {}, recovering",value,e);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package io.github.qsolutionsde.jfhem.data;
+
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Single pass aggregation of timestamped numeric values: count, sum, min, max, mean, variance and
+ * oldest/newest update.
+ *
+ * Invalid values are skipped, as are values older than {@code maxAge} if given. The clock is read once
+ * on construction. Min and max keep the original {@link TimestampedValue}, so their timestamps are exact.
+ */
+public final class TimestampedStatistics {
+    private final long cutoffMillis;
+    private final Instant cutoff;
+
+    private long count;
+    private double sum;
+    private double mean;
+    private double m2;
+
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private long minAt;
+    private long maxAt;
+    private TimestampedValue<Double> minValue;
+    private TimestampedValue<Double> maxValue;
+
+    private long oldestMillis = Long.MAX_VALUE;
+    private long newestMillis = Long.MIN_VALUE;
+    private Instant oldest;
+    private Instant newest;
+
+    public TimestampedStatistics() {
+        this.cutoff = null;
+        this.cutoffMillis = Long.MIN_VALUE;
+    }
+
+    public TimestampedStatistics(@NonNull Duration maxAge) {
+        final Instant now = TimestampClock.instant();
+        // saturated like TimestampedValue.isExpired, maxAge may be FOREVER
+        if (maxAge.getSeconds() >= now.getEpochSecond()) {
+            this.cutoff = null;
+            this.cutoffMillis = Long.MIN_VALUE;
+        } else {
+            this.cutoff = now.minus(maxAge);
+            this.cutoffMillis = cutoff.toEpochMilli();
+        }
+    }
+
+    @SafeVarargs
+    public static TimestampedStatistics of(@NonNull TimestampedValue<Double>... values) {
+        TimestampedStatistics s = new TimestampedStatistics();
+        for (TimestampedValue<Double> t : values)
+            s.accept(t);
+        return s;
+    }
+
+    public static TimestampedStatistics of(@NonNull Collection<TimestampedValue<Double>> values) {
+        TimestampedStatistics s = new TimestampedStatistics();
+        for (TimestampedValue<Double> t : values)
+            s.accept(t);
+        return s;
+    }
+
+    @SafeVarargs
+    public static TimestampedStatistics of(@NonNull Duration maxAge, @NonNull TimestampedValue<Double>... values) {
+        TimestampedStatistics s = new TimestampedStatistics(maxAge);
+        for (TimestampedValue<Double> t : values)
+            s.accept(t);
+        return s;
+    }
+
+    public static TimestampedStatistics of(@NonNull Duration maxAge, @NonNull Collection<TimestampedValue<Double>> values) {
+        TimestampedStatistics s = new TimestampedStatistics(maxAge);
+        for (TimestampedValue<Double> t : values)
+            s.accept(t);
+        return s;
+    }
+
+    public static TimestampedStatistics of(@NonNull TimestampedDouble... values) {
+        TimestampedStatistics s = new TimestampedStatistics();
+        for (TimestampedDouble t : values)
+            s.accept(t);
+        return s;
+    }
+
+    public static TimestampedStatistics of(@NonNull Duration maxAge, @NonNull TimestampedDouble... values) {
+        TimestampedStatistics s = new TimestampedStatistics(maxAge);
+        for (TimestampedDouble t : values)
+            s.accept(t);
+        return s;
+    }
+
+    public void accept(TimestampedValue<Double> t) {
+        if (t == null || t.isInvalid())
+            return;
+
+        final Instant l = t.lastUpdate();
+        if (cutoff != null && l.isBefore(cutoff))
+            return;
+
+        final double v = t.value();
+        final long millis = l.toEpochMilli();
+        add(v, millis);
+
+        if (minValue == null && v == min && minAt == millis)
+            minValue = t;
+        if (maxValue == null && v == max && maxAt == millis)
+            maxValue = t;
+        if (millis == oldestMillis && (oldest == null || l.isBefore(oldest)))
+            oldest = l;
+        if (millis == newestMillis && (newest == null || l.isAfter(newest)))
+            newest = l;
+    }
+
+    public void accept(TimestampedDouble t) {
+        if (t != null && t.isValid())
+            accept(t.value(), t.lastUpdateMillis());
+    }
+
+    /**
+     * Adds a value updated at {@code lastUpdate} epoch millis, unless it is older than {@code maxAge}.
+     */
+    public void accept(double value, long lastUpdate) {
+        if (lastUpdate < cutoffMillis)
+            return;
+        add(value, lastUpdate);
+    }
+
+    private void add(double v, long millis) {
+        count++;
+        sum += v;
+
+        // Welford
+        final double delta = v - mean;
+        mean += delta / count;
+        m2 += delta * (v - mean);
+
+        if (v < min) {
+            min = v;
+            minAt = millis;
+            minValue = null;
+        }
+        if (v > max) {
+            max = v;
+            maxAt = millis;
+            maxValue = null;
+        }
+        if (millis < oldestMillis) {
+            oldestMillis = millis;
+            oldest = null;
+        }
+        if (millis > newestMillis) {
+            newestMillis = millis;
+            newest = null;
+        }
+    }
+
+    public long count() { return count; }
+    public boolean isEmpty() { return count == 0; }
+
+    public double sum() { return sum; }
+
+    /** @return the minimum, {@code NaN} if empty */
+    public double min() { return count == 0 ? Double.NaN : min; }
+
+    /** @return the maximum, {@code NaN} if empty */
+    public double max() { return count == 0 ? Double.NaN : max; }
+
+    /** @return the arithmetic mean, {@code NaN} if empty */
+    public double mean() { return count == 0 ? Double.NaN : mean; }
+
+    /** @return the population variance, {@code NaN} if empty */
+    public double variance() { return count == 0 ? Double.NaN : m2 / count; }
+
+    public double standardDeviation() { return Math.sqrt(variance()); }
+
+    public long oldestMillis() { return oldestMillis; }
+    public long newestMillis() { return newestMillis; }
+
+    public Instant oldest() {
+        if (count == 0)
+            return null;
+        return oldest != null ? oldest : Instant.ofEpochMilli(oldestMillis);
+    }
+
+    public Instant newest() {
+        if (count == 0)
+            return null;
+        return newest != null ? newest : Instant.ofEpochMilli(newestMillis);
+    }
+
+    /** @return the value with the minimum, {@link TimestampedValue#NULL()} if empty */
+    public @NonNull TimestampedValue<Double> minValue() {
+        if (count == 0)
+            return TimestampedValue.NULL();
+        return minValue != null ? minValue : new TimestampedValue<>(min, Instant.ofEpochMilli(minAt));
+    }
+
+    /** @return the value with the maximum, {@link TimestampedValue#NULL()} if empty */
+    public @NonNull TimestampedValue<Double> maxValue() {
+        if (count == 0)
+            return TimestampedValue.NULL();
+        return maxValue != null ? maxValue : new TimestampedValue<>(max, Instant.ofEpochMilli(maxAt));
+    }
+
+    /** @return the mean, timestamped with the oldest update, as the combinators of {@link TimestampedValue} do */
+    public @NonNull TimestampedValue<Double> average() {
+        return count == 0 ?
+                new TimestampedValue<>(null, TimestampClock.instant()) :
+                new TimestampedValue<>(mean, oldest());
+    }
+}
@@ -4,9 +4,6 @@ import lombok.Getter;
 import lombok.NonNull;
 import lombok.experimental.Accessors;
 
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.text.ParseException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
@@ -22,12 +19,16 @@ public class TimestampedValue<T extends Comparable<? super T>> implements Compar
     @Getter @Accessors(fluent = true)
     protected final Instant lastUpdate;
 
+    // numeric forms, parsed on first cast
+    private TimestampedValue<Double> asDouble;
+    private TimestampedValue<Long> asLong;
+
     public TimestampedValue(T value) {
-        this(value,Instant.now());
+        this(value,TimestampClock.instant());
     }
     public TimestampedValue(T value, Instant lastUpdate) {
         this.value = value;
-        this.lastUpdate = (lastUpdate == null) ? Instant.now() : lastUpdate;
+        this.lastUpdate = (lastUpdate == null) ? TimestampClock.instant() : lastUpdate;
     }
 
     public TimestampedValue() {
@@ -56,11 +57,13 @@ public class TimestampedValue<T extends Comparable<? super T>> implements Compar
     {
         return lastUpdate() == null ?
                 ChronoUnit.FOREVER.getDuration() :
-                Duration.between(lastUpdate(), Instant.now());
+                Duration.ofMillis(TimestampClock.millis() - lastUpdate().toEpochMilli());
     }
 
     public boolean isExpired(Duration maxAge) {
-        return !isValid() || age().compareTo(maxAge) > 0;
+        // saturated, maxAge may be FOREVER
+        final long max = maxAge.getSeconds() >= Long.MAX_VALUE / 1000 ? Long.MAX_VALUE : maxAge.toMillis();
+        return !isValid() || TimestampClock.millis() - lastUpdate().toEpochMilli() > max;
     }
 
     public boolean is(Predicate<T> test) {
@@ -140,6 +143,21 @@ public class TimestampedValue<T extends Comparable<? super T>> implements Compar
             return new TimestampedValue<>(baseValue.value(),baseValue.lastUpdate());
     }
 
+    public static @NonNull TimestampedValue<Double> of(TimestampedDouble baseValue)
+    {
+        return baseValue == null ? TimestampedValue.NULL() : baseValue.toTimestampedValue();
+    }
+
+    public static @NonNull TimestampedValue<Long> of(TimestampedLong baseValue)
+    {
+        return baseValue == null ? TimestampedValue.NULL() : baseValue.toTimestampedValue();
+    }
+
+    public static @NonNull TimestampedValue<Boolean> of(TimestampedBoolean baseValue)
+    {
+        return baseValue == null ? TimestampedValue.NULL() : baseValue.toTimestampedValue();
+    }
+
     public static <S extends Comparable<S>,V extends Comparable<V>> @NonNull TimestampedValue<S> of(TimestampedValue<V> baseValue, @NonNull Function<V,S> transform)
     {
         if (baseValue == null || baseValue.value() == null)
@@ -162,68 +180,59 @@ public class TimestampedValue<T extends Comparable<? super T>> implements Compar
     }
 
     public static <S extends Comparable<S>> TimestampedValue<Double> min(@NonNull TimestampedValue<Double>... values) {
-        Optional<TimestampedValue<Double>> res = Arrays.stream(values).filter(TimestampedValue::isValid).min(Comparator.comparing(TimestampedValue::value));
-        return res.orElse(TimestampedValue.NULL());
+        return TimestampedStatistics.of(values).minValue();
     }
 
     public static <S extends Comparable<S>> TimestampedValue<Double> max(@NonNull TimestampedValue<Double>... values) {
-        Optional<TimestampedValue<Double>> res = Arrays.stream(values).filter(TimestampedValue::isValid).max(Comparator.comparing(TimestampedValue::value));
-        return res.orElse(TimestampedValue.NULL());
+        return TimestampedStatistics.of(values).maxValue();
     }
 
     public static <S extends Comparable<S>> TimestampedValue<Double> min(@NonNull final Duration maxAge, @NonNull TimestampedValue<Double>... values) {
-        Optional<TimestampedValue<Double>> res = Arrays.stream(values).filter(t -> ! (t.isExpired(maxAge) || t.isInvalid())).min(Comparator.comparing(TimestampedValue::value));
-        return res.orElse(TimestampedValue.NULL());
+        return TimestampedStatistics.of(maxAge, values).minValue();
     }
 
     public static <S extends Comparable<S>> TimestampedValue<Double> max(@NonNull final Duration maxAge, @NonNull TimestampedValue<Double>... values) {
-        Optional<TimestampedValue<Double>> res = Arrays.stream(values).filter(t -> ! (t.isExpired(maxAge) || t.isInvalid())).max(Comparator.comparing(TimestampedValue::value));
-        return res.orElse(TimestampedValue.NULL());
+        return TimestampedStatistics.of(maxAge, values).maxValue();
     }
 
     public static <S extends Comparable<S>> TimestampedValue<Double> min(@NonNull Collection<TimestampedValue<Double>> values) {
-        Optional<TimestampedValue<Double>> res = values.stream().filter(TimestampedValue::isValid).min(Comparator.comparing(TimestampedValue::value));
-        return res.orElse(TimestampedValue.NULL());
+        return TimestampedStatistics.of(values).minValue();
     }
 
     public static <S extends Comparable<S>> TimestampedValue<Double> max(@NonNull Collection<TimestampedValue<Double>> values) {
-        Optional<TimestampedValue<Double>> res = values.stream().filter(TimestampedValue::isValid).max(Comparator.comparing(TimestampedValue::value));
-        return res.orElse(TimestampedValue.NULL());
+        return TimestampedStatistics.of(values).maxValue();
     }
 
     public static <S extends Comparable<S>> TimestampedValue<Double> min(@NonNull final Duration maxAge, @NonNull Collection<TimestampedValue<Double>> values) {
-        Optional<TimestampedValue<Double>> res = values.stream().filter(t -> ! (t.isExpired(maxAge) || t.isInvalid())).min(Comparator.comparing(TimestampedValue::value));
-        return res.orElse(TimestampedValue.NULL());
+        return TimestampedStatistics.of(maxAge, values).minValue();
     }
 
     public static <S extends Comparable<S>> TimestampedValue<Double> max(@NonNull final Duration maxAge, @NonNull Collection<TimestampedValue<Double>> values) {
-        Optional<TimestampedValue<Double>> res = values.stream().filter(t -> ! (t.isExpired(maxAge) || t.isInvalid())).max(Comparator.comparing(TimestampedValue::value));
-        return res.orElse(TimestampedValue.NULL());
+        return TimestampedStatistics.of(maxAge, values).maxValue();
     }
 
-
     public static @NonNull TimestampedValue<Double> avg(@NonNull TimestampedValue<Double>... values) {
-        OptionalDouble res = Arrays.stream(values).filter(TimestampedValue::isValid).mapToDouble(TimestampedValue::value).average();
-        Optional<TimestampedValue<Double>> i = Arrays.stream(values).filter(TimestampedValue::isValid).min(Comparator.comparing(TimestampedValue::lastUpdate));
-        return new TimestampedValue<>(res.isPresent() ? res.getAsDouble() : null,i.isPresent() ? i.get().lastUpdate() : Instant.now());
+        return TimestampedStatistics.of(values).average();
     }
 
     public static @NonNull TimestampedValue<Double> avg(@NonNull Collection<TimestampedValue<Double>> values) {
-        OptionalDouble res = values.stream().filter(TimestampedValue::isValid).mapToDouble(TimestampedValue::value).average();
-        Optional<TimestampedValue<Double>> i = values.stream().filter(TimestampedValue::isValid).min(Comparator.comparing(TimestampedValue::lastUpdate));
-        return new TimestampedValue<>(res.isPresent() ? res.getAsDouble() : null,i.isPresent() ? i.get().lastUpdate() : Instant.now());
+        return TimestampedStatistics.of(values).average();
     }
 
     public static @NonNull TimestampedValue<Double> avg(@NonNull final Duration maxAge, @NonNull TimestampedValue<Double>... values) {
-        OptionalDouble res = Arrays.stream(values).filter(t -> ! (t.isExpired(maxAge) || t.isInvalid())).mapToDouble(TimestampedValue::value).average();
-        Optional<TimestampedValue<Double>> i = Arrays.stream(values).filter(t -> ! (t.isExpired(maxAge) || t.isInvalid())).min(Comparator.comparing(TimestampedValue::lastUpdate));
-        return new TimestampedValue<>(res.isPresent() ? res.getAsDouble() : null,i.isPresent() ? i.get().lastUpdate() : Instant.now());
+        return TimestampedStatistics.of(maxAge, values).average();
     }
 
     public static @NonNull TimestampedValue<Double> avg(@NonNull final Duration maxAge, @NonNull Collection<TimestampedValue<Double>> values) {
-        OptionalDouble res = values.stream().filter(t -> ! (t.isExpired(maxAge) || t.isInvalid())).mapToDouble(TimestampedValue::value).average();
-        Optional<TimestampedValue<Double>> i = values.stream().filter(t -> ! (t.isExpired(maxAge) || t.isInvalid())).min(Comparator.comparing(TimestampedValue::lastUpdate));
-        return new TimestampedValue<>(res.isPresent() ? res.getAsDouble() : null,i.isPresent() ? i.get().lastUpdate() : Instant.now());
+        return TimestampedStatistics.of(maxAge, values).average();
+    }
+
+    public static Instant newest(@NonNull Collection<? extends TimestampedValue<?>> values) {
+        Instant newest = null;
+        for (TimestampedValue<?> t : values)
+            if (t != null && t.lastUpdate() != null && (newest == null || t.lastUpdate().isAfter(newest)))
+                newest = t.lastUpdate();
+        return newest;
     }
 
 
@@ -379,6 +388,13 @@ public class TimestampedValue<T extends Comparable<? super T>> implements Compar
         if (isDouble())
             return (TimestampedValue<Double>) this;
 
+        TimestampedValue<Double> d = asDouble;
+        if (d == null)
+            asDouble = d = convertToDouble();
+        return d;
+    }
+
+    protected TimestampedValue<Double> convertToDouble() {
         if (isBoolean())
             return TimestampedValue.of((TimestampedValue<Boolean>) this,b -> b ? 0d : 1d);
 
@@ -387,24 +403,8 @@ public class TimestampedValue<T extends Comparable<? super T>> implements Compar
 
         if (isString()) {
             final String s = (String) value();
-            if (s.contains(","))
-                return TimestampedValue.of((TimestampedValue<String>) this,
-                        t -> {
-                            try {
-                                return new DecimalFormat("#." + "########", DecimalFormatSymbols.getInstance(Locale.GERMAN)).parse(t).doubleValue();
-                            } catch (ParseException e) {
-                                return null;
-                            }
-                        });
-            else
-                return TimestampedValue.of((TimestampedValue<String>) this,
-                        t -> {
-                            try {
-                                return new DecimalFormat("#." + "########", DecimalFormatSymbols.getInstance(Locale.ENGLISH)).parse(t).doubleValue();
-                            } catch (ParseException e) {
-                                return null;
-                            }
-                        });
+            final double d = NumberParser.parseDouble(s);
+            return new TimestampedValue<>(Double.isNaN(d) && !NumberParser.isNaN(s) ? null : d, lastUpdate());
         }
         return TimestampedValue.NULL();
     }
@@ -416,6 +416,13 @@ public class TimestampedValue<T extends Comparable<? super T>> implements Compar
         if (isLong())
             return (TimestampedValue<Long>) this;
 
+        TimestampedValue<Long> l = asLong;
+        if (l == null)
+            asLong = l = convertToLong();
+        return l;
+    }
+
+    protected TimestampedValue<Long> convertToLong() {
         if (isBoolean())
             return TimestampedValue.of((TimestampedValue<Boolean>) this,b -> b ? 0l : 1l);
 
@@ -424,18 +431,19 @@ public class TimestampedValue<T extends Comparable<? super T>> implements Compar
 
         if (isString()) {
             final String s = (String) value();
-            try {
-                if (s.contains(","))
-                    return TimestampedValue.of((TimestampedValue<String>) this, Long::parseLong);
-                else
-                    return TimestampedValue.of((TimestampedValue<String>) this, Long::parseLong);
-            } catch (NumberFormatException e) {
+            if (NumberParser.isLong(s, true))
+                return new TimestampedValue<>(NumberParser.parseLong(s, true, 0), lastUpdate());
+            else
                 return NULL();
-            }
         }
 
         return TimestampedValue.NULL();
     }
+
+    public TimestampedDouble toTimestampedDouble() { return TimestampedDouble.of(this); }
+    public TimestampedLong toTimestampedLong() { return TimestampedLong.of(this); }
+    public TimestampedBoolean toTimestampedBoolean() { return TimestampedBoolean.of(this); }
+
     public boolean isDouble() { return value instanceof Double; }
     public boolean isBoolean() { return value instanceof Boolean; }
     public boolean isLong() { return value instanceof Long; }
@@ -454,20 +462,18 @@ public class TimestampedValue<T extends Comparable<? super T>> implements Compar
 
         String s = o.toString();
 
-        try {
-            double d = Double.parseDouble(s);
-            return new TimestampedValue(d,i);
-        } catch (NumberFormatException e) {
-            if ("true".equalsIgnoreCase(s))
-                return new TimestampedValue<>(true,i);
-            else if ("false".equalsIgnoreCase(s))
-                return new TimestampedValue<>(false,i);
-        }
+        double d = NumberParser.parseDouble(s, false);
+        if (!Double.isNaN(d) || NumberParser.isNaN(s))
+            return new TimestampedValue<>(d,i);
+        if ("true".equalsIgnoreCase(s))
+            return new TimestampedValue<>(true,i);
+        else if ("false".equalsIgnoreCase(s))
+            return new TimestampedValue<>(false,i);
 
         return new TimestampedValue<>(s,i);
     }
 
     public static TimestampedValue from(@NonNull Object o) {
-        return from(o,Instant.now());
+        return from(o,TimestampClock.instant());
     }
 }
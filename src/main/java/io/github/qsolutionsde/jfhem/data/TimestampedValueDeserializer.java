@@ -1,23 +1,23 @@
 package io.github.qsolutionsde.jfhem.data;
 
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
-import java.time.DateTimeException;
 import java.time.Instant;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
 
+/**
+ * Reads {@code {"value": ..., "lastUpdate": ...}} from the token stream, without building a tree.
+ *
+ * The timestamp may be in any {@link TimestampFormat}, as string or number.
+ */
 @SuppressWarnings("rawtypes")
 @Slf4j
 public class TimestampedValueDeserializer extends StdDeserializer<TimestampedValue> {
 
-    private final DateTimeFormatter fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
-
     public TimestampedValueDeserializer() {
         this(null);
     }
@@ -27,37 +27,66 @@ public class TimestampedValueDeserializer extends StdDeserializer<TimestampedVal
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public TimestampedValue deserialize(JsonParser jp, DeserializationContext ctxt)
             throws IOException {
-        JsonNode node = jp.getCodec().readTree(jp);
-
-        JsonNode value = node.get("value");
-        JsonNode instant = node.get("lastUpdate");
+        JsonToken t = jp.currentToken();
+        if (t == JsonToken.START_OBJECT)
+            t = jp.nextToken();
+        if (t != JsonToken.FIELD_NAME && t != JsonToken.END_OBJECT)
+            return (TimestampedValue) ctxt.handleUnexpectedToken(TimestampedValue.class, jp);
 
-        Instant i;
+        Comparable value = null;
+        long lastUpdate = TimestampFormat.INVALID;
+        String invalidTimestamp = null;
 
-        try {
-            i = Instant.from(fmt.parse(instant.asText()));
+        for (; t == JsonToken.FIELD_NAME; t = jp.nextToken()) {
+            final String field = jp.getCurrentName();
+            t = jp.nextToken();
+            if ("value".equals(field))
+                value = value(jp, t);
+            else if ("lastUpdate".equals(field)) {
+                if (t == JsonToken.VALUE_NUMBER_INT)
+                    lastUpdate = jp.getLongValue();
+                else if (t == JsonToken.VALUE_STRING) {
+                    lastUpdate = TimestampFormat.parse(jp.getText());
+                    if (lastUpdate == TimestampFormat.INVALID)
+                        invalidTimestamp = jp.getText();
+                } else {
+                    invalidTimestamp = jp.getText();
+                    jp.skipChildren();
+                }
+            } else
+                jp.skipChildren();
         }
-        catch (DateTimeException e) {
-
-            try {
-                long epoch = Long.parseLong(instant.asText());
-                i = Instant.ofEpochMilli(epoch);
-            } catch (NumberFormatException f) {
-                i = Instant.now();
-                log.error("Error deserializing timestamp {}",instant.asText(),e);
-            }
-        }
-        if (value.isDouble() || value.isFloat())
-            return new TimestampedValue<>(value.asDouble(), i);
-
-        if (value.isBoolean())
-            return new TimestampedValue<>(value.asBoolean(),i);
 
-        if (value.isInt() || value.isLong())
-            return new TimestampedValue<>(value.asLong(), i);
+        Instant i;
+        if (lastUpdate != TimestampFormat.INVALID)
+            i = Instant.ofEpochMilli(lastUpdate);
+        else {
+            i = TimestampClock.instant();
+            log.error("Error deserializing timestamp {}", invalidTimestamp);
+        }
+        return new TimestampedValue(value, i);
+    }
 
-        return new TimestampedValue<>(value.asText(), i);
+    protected static Comparable value(JsonParser jp, JsonToken t) throws IOException {
+        switch (t) {
+            case VALUE_NUMBER_FLOAT:
+                return jp.getDoubleValue();
+            case VALUE_NUMBER_INT:
+                return jp.getNumberType() == JsonParser.NumberType.BIG_INTEGER ? jp.getText() : (Comparable) jp.getLongValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            case START_OBJECT:
+            case START_ARRAY:
+                return jp.readValueAsTree().toString();
+            default:
+                return jp.getText();
+        }
     }
 }
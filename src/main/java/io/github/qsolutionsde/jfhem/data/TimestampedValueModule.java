@@ -2,9 +2,21 @@ package io.github.qsolutionsde.jfhem.data;
 
 import com.fasterxml.jackson.databind.module.SimpleModule;
 
+/**
+ * Jackson support for timestamped values. The timestamp format only affects writing, all formats are read.
+ */
 public class TimestampedValueModule extends SimpleModule {
     public TimestampedValueModule() {
-        addSerializer(TimestampedValue.class, new TimestampedValueSerializer());
+        this(TimestampFormat.SECONDS);
+    }
+
+    public TimestampedValueModule(TimestampFormat format) {
+        addSerializer(TimestampedValue.class, new TimestampedValueSerializer(format));
         addDeserializer(TimestampedValue.class, new TimestampedValueDeserializer());
+
+        addSerializer(TimestampedPrimitive.class, new TimestampedPrimitiveSerializer(format));
+        addDeserializer(TimestampedDouble.class, new TimestampedPrimitiveDeserializer<>(TimestampedDouble.class, TimestampedDouble::of));
+        addDeserializer(TimestampedLong.class, new TimestampedPrimitiveDeserializer<>(TimestampedLong.class, TimestampedLong::of));
+        addDeserializer(TimestampedBoolean.class, new TimestampedPrimitiveDeserializer<>(TimestampedBoolean.class, TimestampedBoolean::of));
     }
 }
@@ -5,20 +5,23 @@ import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import lombok.extern.slf4j.Slf4j;
 
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
-
 @SuppressWarnings("rawtypes")
 @Slf4j
 public class TimestampedValueSerializer extends StdSerializer<TimestampedValue> {
-    private final DateTimeFormatter fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+    private final TimestampFormat format;
 
     public TimestampedValueSerializer() {
-        this(null);
+        this(TimestampFormat.SECONDS);
+    }
+
+    public TimestampedValueSerializer(TimestampFormat format) {
+        super(TimestampedValue.class);
+        this.format = format;
     }
 
     public TimestampedValueSerializer(Class<TimestampedValue> t) {
         super(t);
+        this.format = TimestampFormat.SECONDS;
     }
 
     @Override
@@ -37,7 +40,7 @@ public class TimestampedValueSerializer extends StdSerializer<TimestampedValue>
                 else
                     jgen.writeStringField("value", value.value().toString());
 
-                jgen.writeStringField("lastUpdate", fmt.format(value.lastUpdate()));
+                format.write(jgen, "lastUpdate", value.lastUpdate().toEpochMilli());
                 jgen.writeEndObject();
             } else
                 log.warn("Invalid timestamped value for serialization");
@@ -0,0 +1,26 @@
+package io.github.qsolutionsde.jfhem.derived;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class DerivedConfig {
+    protected List<Rule> rules = new ArrayList<>();
+
+    @Data
+    public static class Rule {
+        // the derived reading is published as an event of this host, device and reading
+        protected String host;
+        protected String device;
+        protected String reading;
+        protected DerivedFunction function;
+        // host:device:reading, or device:reading of the same host; may refer to other derived readings
+        protected List<String> inputs = new ArrayList<>();
+        // value compared by ANY, ALL and COUNT, else inputs are tested as boolean
+        protected String value;
+        // decimal places of numeric results
+        protected int decimals = 2;
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.qsolutionsde.jfhem.derived;
+
+import io.github.qsolutionsde.jfhem.data.TimestampedStatistics;
+import io.github.qsolutionsde.jfhem.data.TimestampedValue;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Functions available to configured derived readings. Results are timestamped with the oldest input used,
+ * invalid inputs are ignored.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public enum DerivedFunction {
+    AVG, MIN, MAX, SUM,
+    /** whether any input equals {@code value}, or is true if none is given */
+    ANY,
+    /** whether all inputs equal {@code value}, or are true if none is given */
+    ALL,
+    /** the number of inputs equal to {@code value}, or true if none is given */
+    COUNT,
+    /** dew point in °C of the inputs temperature in °C and relative humidity in % */
+    DEWPOINT;
+
+    public void checkInputs(int n) {
+        if (this == DEWPOINT ? n != 2 : n < 1)
+            throw new IllegalArgumentException(this + " does not take " + n + " inputs");
+    }
+
+    public TimestampedValue<?> apply(List<TimestampedValue> inputs, String value) {
+        switch (this) {
+            case DEWPOINT:
+                return TimestampedValue.of(inputs.get(0).castToDouble(), inputs.get(1).castToDouble(), DerivedFunction::dewPoint);
+            case ANY:
+            case ALL:
+            case COUNT:
+                return test(inputs, value);
+            default:
+                return aggregate(inputs);
+        }
+    }
+
+    protected TimestampedValue<?> aggregate(List<TimestampedValue> inputs) {
+        final TimestampedStatistics s = new TimestampedStatistics();
+        for (TimestampedValue t : inputs)
+            if (t.isValid())
+                s.accept(t.castToDouble());
+        if (s.isEmpty())
+            return TimestampedValue.NULL();
+
+        switch (this) {
+            case MIN: return new TimestampedValue<>(s.min(), s.oldest());
+            case MAX: return new TimestampedValue<>(s.max(), s.oldest());
+            case SUM: return new TimestampedValue<>(s.sum(), s.oldest());
+            default: return new TimestampedValue<>(s.mean(), s.oldest());
+        }
+    }
+
+    protected TimestampedValue<?> test(List<TimestampedValue> inputs, String value) {
+        int valid = 0;
+        long matches = 0;
+        Instant oldest = null;
+        for (TimestampedValue t : inputs) {
+            if (t.isInvalid())
+                continue;
+            valid++;
+            if (oldest == null || t.lastUpdate().isBefore(oldest))
+                oldest = t.lastUpdate();
+            if (value != null ?
+                    value.equalsIgnoreCase(t.castToString().value().toString()) :
+                    Boolean.TRUE.equals(t.castToBoolean().value()))
+                matches++;
+        }
+        if (valid == 0)
+            return TimestampedValue.NULL();
+
+        switch (this) {
+            case ANY: return new TimestampedValue<>(matches > 0, oldest);
+            case ALL: return new TimestampedValue<>(matches == valid, oldest);
+            default: return new TimestampedValue<>(matches, oldest);
+        }
+    }
+
+    /** Magnus formula */
+    public static double dewPoint(double temperature, double humidity) {
+        final double a = 17.62;
+        final double b = 243.12;
+        final double gamma = Math.log(humidity / 100) + a * temperature / (b + temperature);
+        return b * gamma / (a - gamma);
+    }
+}
@@ -0,0 +1,266 @@
+package io.github.qsolutionsde.jfhem.derived;
+
+import io.github.qsolutionsde.jfhem.FHEMEventListener;
+import io.github.qsolutionsde.jfhem.Subscription;
+import io.github.qsolutionsde.jfhem.data.TimestampClock;
+import io.github.qsolutionsde.jfhem.data.TimestampedValue;
+import io.github.qsolutionsde.jfhem.state.StateRegistry;
+import io.github.qsolutionsde.jfhem.telnet.FHEMTelnetConnection;
+import lombok.NonNull;
+import lombok.Synchronized;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * Dependency graph of readings derived from other readings, e.g. dew point or "any window open".
+ *
+ * An event only recomputes the readings depending on it, directly or through other derived readings, each once
+ * and in dependency order. Changed results are published as events of device type {@value #DEVICE_TYPE} to the
+ * listeners of this graph.
+ */
+@Slf4j
+@SuppressWarnings("rawtypes")
+public class DerivedReadings implements FHEMEventListener {
+    public static final String DEVICE_TYPE = "derived";
+
+    protected final Map<String, Node> nodes = new HashMap<>();
+    // input key -> nodes reading it
+    protected final Map<String, List<Node>> dependents = new HashMap<>();
+
+    protected final List<FHEMEventListener> listeners = new CopyOnWriteArrayList<>();
+
+    protected final List<FHEMTelnetConnection> connections;
+    // inputs subscribed to at the connections
+    protected final Set<String> subscribed = new HashSet<>();
+
+    public DerivedReadings(DerivedConfig config, List<FHEMTelnetConnection> cs) {
+        connections = cs;
+        for (DerivedConfig.Rule r : config.getRules())
+            define(r);
+        log.info("{} derived readings", nodes.size());
+    }
+
+    protected static String key(String host, String device, String reading) {
+        return host + ":" + device + ":" + reading;
+    }
+
+    public void addListener(FHEMEventListener l) {
+        listeners.add(l);
+    }
+
+    public void define(DerivedConfig.Rule r) {
+        if (r.getHost() == null || r.getDevice() == null || r.getReading() == null || r.getFunction() == null)
+            throw new IllegalArgumentException("Derived reading needs host, device, reading and function: " + r);
+        r.getFunction().checkInputs(r.getInputs().size());
+
+        final List<String> inputs = new ArrayList<>(r.getInputs().size());
+        for (String i : r.getInputs())
+            inputs.add(i.split(":").length == 2 ? r.getHost() + ":" + i : i);
+
+        final DerivedFunction f = r.getFunction();
+        final String value = r.getValue();
+        define(r.getHost(), r.getDevice(), r.getReading(), inputs, l -> f.apply(l, value), r.getDecimals());
+    }
+
+    /**
+     * @param inputs {@code host:device:reading} of the inputs, in the order passed to {@code function}
+     * @param decimals decimal places of numeric results
+     */
+    @Synchronized
+    public void define(@NonNull String host, @NonNull String device, @NonNull String reading,
+                       @NonNull List<String> inputs,
+                       @NonNull Function<List<TimestampedValue>, TimestampedValue<?>> function,
+                       int decimals) {
+        final String key = key(host, device, reading);
+        if (nodes.containsKey(key))
+            throw new IllegalArgumentException("Derived reading " + key + " defined twice");
+        for (String i : inputs)
+            if (i.split(":").length != 3)
+                throw new IllegalArgumentException("Input " + i + " of " + key + " is not host:device:reading");
+        if (reaches(key, new HashSet<>(inputs), new HashSet<>()))
+            throw new IllegalArgumentException("Derived reading " + key + " depends on itself");
+
+        final Node n = new Node(host, device, reading, inputs, function, decimals);
+        nodes.put(key, n);
+        for (String i : inputs)
+            dependents.computeIfAbsent(i, x -> new ArrayList<>()).add(n);
+
+        nodes.values().forEach(x -> x.depth = -1);
+        nodes.values().forEach(this::depth);
+
+        for (String i : inputs)
+            if (subscribed.add(i)) {
+                final String[] k = i.split(":", 3);
+                for (FHEMTelnetConnection c : connections)
+                    if (c.getHost().getHost().equals(k[0]))
+                        c.addListener(this, Subscription.names(null, k[1], k[2]));
+            }
+    }
+
+    // whether one of the targets is key or depends on it
+    protected boolean reaches(String key, Set<String> targets, Set<String> visited) {
+        if (targets.contains(key))
+            return true;
+        if (!visited.add(key))
+            return false;
+        for (Node d : dependents.getOrDefault(key, Collections.emptyList()))
+            if (reaches(d.key, targets, visited))
+                return true;
+        return false;
+    }
+
+    protected int depth(Node n) {
+        if (n.depth < 0) {
+            int d = 0;
+            for (String i : n.inputs) {
+                final Node in = nodes.get(i);
+                if (in != null)
+                    d = Math.max(d, depth(in) + 1);
+            }
+            n.depth = d;
+        }
+        return n.depth;
+    }
+
+    @Override
+    public void event(String host, String deviceType, String device, String reading, String value) {
+        update(key(host, device, reading), new TimestampedValue<>(value, TimestampClock.instant()));
+    }
+
+    @Override
+    public void event(long timestamp, String host, String deviceType, String device, String reading, String value) {
+        update(key(host, device, reading), new TimestampedValue<>(value, Instant.ofEpochMilli(timestamp)));
+    }
+
+    /**
+     * Recomputes the readings depending on {@code key} and publishes the changed ones, as events at the last
+     * update of their result, i.e. of their oldest input.
+     */
+    @Synchronized
+    public void update(String key, TimestampedValue<?> value) {
+        if (!dependents.containsKey(key))
+            return;
+
+        final PriorityQueue<Node> dirty = new PriorityQueue<>(Comparator.comparingInt(n -> n.depth));
+        set(key, value, dirty);
+
+        while (!dirty.isEmpty()) {
+            final Node n = dirty.poll();
+            n.dirty = false;
+            if (n.evaluate()) {
+                final long timestamp = (n.value.lastUpdate() != null ? n.value.lastUpdate() : value.lastUpdate())
+                        .toEpochMilli();
+                listeners.forEach(l -> l.event(timestamp, n.host, DEVICE_TYPE, n.device, n.reading, n.formatted));
+                set(n.key, n.value, dirty);
+            }
+        }
+    }
+
+    // sets the input of the dependents and adds them to dirty, if given
+    protected void set(String key, TimestampedValue<?> value, PriorityQueue<Node> dirty) {
+        for (Node n : dependents.getOrDefault(key, Collections.emptyList())) {
+            for (int i = 0; i < n.inputs.size(); i++)
+                if (n.inputs.get(i).equals(key))
+                    n.values.set(i, value);
+            if (dirty != null && !n.dirty) {
+                n.dirty = true;
+                dirty.add(n);
+            }
+        }
+    }
+
+    /**
+     * Takes the current inputs from {@code state}, e.g. after replaying the journal, without publishing events.
+     */
+    @Synchronized
+    public void initialize(StateRegistry state) {
+        for (Node n : nodes.values())
+            for (int i = 0; i < n.inputs.size(); i++) {
+                final String[] k = n.inputs.get(i).split(":", 3);
+                final Map<String, TimestampedValue<String>> r = state.getReadings(k[0], k[1]);
+                if (r != null && r.containsKey(k[2]))
+                    n.values.set(i, r.get(k[2]));
+            }
+
+        final List<Node> l = new ArrayList<>(nodes.values());
+        l.sort(Comparator.comparingInt(n -> n.depth));
+        for (Node n : l)
+            if (n.evaluate())
+                set(n.key, n.value, null);
+    }
+
+    /** @return the current value of a derived reading, {@link TimestampedValue#NULL()} if unknown */
+    @Synchronized
+    public TimestampedValue<?> get(String host, String device, String reading) {
+        final Node n = nodes.get(key(host, device, reading));
+        return n == null ? TimestampedValue.NULL() : n.value;
+    }
+
+    protected static class Node {
+        protected final String host;
+        protected final String device;
+        protected final String reading;
+        protected final String key;
+        protected final List<String> inputs;
+        protected final List<TimestampedValue> values;
+        protected final Function<List<TimestampedValue>, TimestampedValue<?>> function;
+        protected final int decimals;
+
+        protected int depth = -1;
+        protected boolean dirty = false;
+
+        protected TimestampedValue<?> value = TimestampedValue.NULL();
+        protected String formatted;
+
+        protected Node(String host, String device, String reading, List<String> inputs,
+                       Function<List<TimestampedValue>, TimestampedValue<?>> function, int decimals) {
+            this.host = host;
+            this.device = device;
+            this.reading = reading;
+            this.key = key(host, device, reading);
+            this.inputs = List.copyOf(inputs);
+            this.values = new ArrayList<>(Collections.nCopies(inputs.size(), TimestampedValue.NULL()));
+            this.function = function;
+            this.decimals = decimals;
+        }
+
+        /** @return whether the value changed */
+        protected boolean evaluate() {
+            TimestampedValue<?> v;
+            try {
+                v = function.apply(Collections.unmodifiableList(values));
+            } catch (RuntimeException e) {
+                log.warn("Error computing {}", key, e);
+                return false;
+            }
+            if (v == null || v.isInvalid())
+                return false;
+
+            final String f = format(v.value());
+            if (f == null)
+                return false;
+
+            value = v;
+            if (f.equals(formatted))
+                return false;
+            formatted = f;
+            return true;
+        }
+
+        protected String format(Object o) {
+            if (o instanceof Double) {
+                final double d = (Double) o;
+                if (Double.isNaN(d) || Double.isInfinite(d))
+                    return null;
+                return BigDecimal.valueOf(d).setScale(decimals, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+            }
+            return o.toString();
+        }
+    }
+}
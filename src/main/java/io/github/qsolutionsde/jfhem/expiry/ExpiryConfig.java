@@ -0,0 +1,26 @@
+package io.github.qsolutionsde.jfhem.expiry;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ExpiryConfig {
+    // resolution of deadlines
+    protected Duration tick = Duration.ofSeconds(1);
+    // buckets of the timer wheel, rounded up to a power of 2
+    protected int wheelSize = 512;
+    // the first matching rule applies, readings without one are not tracked
+    protected List<Rule> rules = new ArrayList<>();
+
+    @Data
+    public static class Rule {
+        // regular expressions, a missing host matches all hosts
+        protected String host;
+        protected String device = ".*";
+        protected String reading = ".*";
+        protected Duration maxAge;
+    }
+}
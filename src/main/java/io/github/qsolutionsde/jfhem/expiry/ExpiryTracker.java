@@ -0,0 +1,226 @@
+package io.github.qsolutionsde.jfhem.expiry;
+
+import io.github.qsolutionsde.jfhem.FHEMEventListener;
+import io.github.qsolutionsde.jfhem.Subscription;
+import io.github.qsolutionsde.jfhem.data.TimestampClock;
+import io.github.qsolutionsde.jfhem.state.StateRegistry;
+import io.github.qsolutionsde.jfhem.telnet.FHEMTelnetConnection;
+import lombok.Synchronized;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Tracks the {@code maxAge} deadline of every reading matching a rule in a hashed timer wheel and publishes an
+ * event of device type {@value #DEVICE_TYPE}, with the last update as value, when a reading is not updated in time.
+ *
+ * An event moves its reading to the bucket of the new deadline, and a tick only visits one bucket, so the
+ * bookkeeping is O(1) per event instead of periodic scans of all readings.
+ */
+@Slf4j
+public class ExpiryTracker implements FHEMEventListener, Closeable {
+    public static final String DEVICE_TYPE = "expired";
+
+    protected static final long UNTRACKED = -1;
+
+    protected final List<Rule> rules = new ArrayList<>();
+    protected final long tickMillis;
+    protected final Entry[] wheel;
+    protected final int mask;
+
+    // next tick to process
+    protected long currentTick;
+    protected final Map<String, Entry> entries = new HashMap<>();
+
+    protected final List<FHEMEventListener> listeners = new CopyOnWriteArrayList<>();
+    protected final ScheduledExecutorService timer;
+
+    public ExpiryTracker(ExpiryConfig config, List<FHEMTelnetConnection> cs) {
+        for (ExpiryConfig.Rule r : config.getRules()) {
+            if (r.getMaxAge() == null)
+                throw new IllegalArgumentException("Expiry rule without maxAge: " + r);
+            rules.add(new Rule(r));
+        }
+
+        tickMillis = Math.max(1, config.getTick().toMillis());
+        final int size = Integer.highestOneBit(Math.max(1, config.getWheelSize() - 1)) << 1;
+        mask = size - 1;
+        wheel = new Entry[size];
+        for (int i = 0; i < size; i++)
+            wheel[i] = new Entry(null, null, null, UNTRACKED);
+        currentTick = TimestampClock.millis() / tickMillis;
+
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "expiry");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(this::expire, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+
+        // only the readings of rules are tracked
+        for (FHEMTelnetConnection c : cs)
+            for (ExpiryConfig.Rule r : config.getRules())
+                if (r.getHost() == null || Pattern.matches(r.getHost(), c.getHost().getHost()))
+                    c.addListener(this, Subscription.of(null, r.getDevice(), r.getReading()));
+    }
+
+    public void addListener(FHEMEventListener l) {
+        listeners.add(l);
+    }
+
+    @Override
+    public void event(String host, String deviceType, String device, String reading, String value) {
+        touch(host, device, reading, TimestampClock.millis());
+    }
+
+    @Override
+    public void event(long timestamp, String host, String deviceType, String device, String reading, String value) {
+        touch(host, device, reading, timestamp);
+    }
+
+    /**
+     * Moves the deadline of a reading to {@code lastUpdate + maxAge}.
+     */
+    @Synchronized
+    public void touch(String host, String device, String reading, long lastUpdate) {
+        final String k = host + ":" + device + ":" + reading;
+        Entry e = entries.get(k);
+        if (e == null) {
+            e = new Entry(host, device, reading, maxAge(host, device, reading));
+            entries.put(k, e);
+        }
+        if (e.maxAge == UNTRACKED || lastUpdate < e.lastUpdate)
+            return;
+
+        e.unlink();
+        e.lastUpdate = lastUpdate;
+        e.deadline = lastUpdate + e.maxAge;
+        e.expired = false;
+        e.linkBefore(wheel[(int) (Math.max(Math.floorDiv(e.deadline + tickMillis - 1, tickMillis), currentTick) & mask)]);
+    }
+
+    /**
+     * Starts tracking the readings in {@code state} from their last update, so readings silent since before
+     * a restart expire as well.
+     */
+    public void initialize(StateRegistry state) {
+        for (String h : state.getHosts())
+            state.getDevices(h).forEach((d, s) ->
+                    s.getReadings().forEach((r, v) -> touch(h, d, r, v.lastUpdate().toEpochMilli())));
+    }
+
+    /** @return whether a tracked reading has not been updated within its {@code maxAge} */
+    @Synchronized
+    public boolean isExpired(String host, String device, String reading) {
+        final Entry e = entries.get(host + ":" + device + ":" + reading);
+        return e != null && e.expired;
+    }
+
+    protected long maxAge(String host, String device, String reading) {
+        for (Rule r : rules)
+            if (r.matches(host, device, reading))
+                return r.maxAge;
+        return UNTRACKED;
+    }
+
+    protected void expire() {
+        try {
+            final long now = TimestampClock.millis();
+            for (Entry e : advance(now)) {
+                final String lastUpdate = Instant.ofEpochMilli(e.lastUpdate).toString();
+                log.debug("{}:{}:{} expired, last update {}", e.host, e.device, e.reading, lastUpdate);
+                listeners.forEach(l -> l.event(now, e.host, DEVICE_TYPE, e.device, e.reading, lastUpdate));
+            }
+        } catch (Exception ex) {
+            log.error("Error expiring readings", ex);
+        }
+    }
+
+    @Synchronized
+    protected List<Entry> advance(long now) {
+        List<Entry> expired = Collections.emptyList();
+        final long target = now / tickMillis;
+        for (; currentTick <= target; currentTick++) {
+            final Entry head = wheel[(int) (currentTick & mask)];
+            for (Entry e = head.next; e != head; ) {
+                final Entry next = e.next;
+                if (e.deadline <= now) {
+                    e.unlink();
+                    e.expired = true;
+                    if (expired.isEmpty())
+                        expired = new ArrayList<>();
+                    expired.add(e);
+                }
+                e = next;
+            }
+        }
+        return expired;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    protected static class Rule {
+        protected final Pattern host;
+        protected final Pattern device;
+        protected final Pattern reading;
+        protected final long maxAge;
+
+        protected Rule(ExpiryConfig.Rule r) {
+            host = r.getHost() == null ? null : Pattern.compile(r.getHost());
+            device = Pattern.compile(r.getDevice());
+            reading = Pattern.compile(r.getReading());
+            maxAge = r.getMaxAge().toMillis();
+        }
+
+        protected boolean matches(String h, String d, String r) {
+            return (host == null || host.matcher(h).matches())
+                    && device.matcher(d).matches()
+                    && reading.matcher(r).matches();
+        }
+    }
+
+    // element of the doubly linked bucket lists, a list head if host is null
+    protected static class Entry {
+        protected final String host;
+        protected final String device;
+        protected final String reading;
+        protected final long maxAge;
+
+        protected long lastUpdate = Long.MIN_VALUE;
+        protected long deadline;
+        protected boolean expired = false;
+
+        protected Entry prev = this;
+        protected Entry next = this;
+
+        protected Entry(String host, String device, String reading, long maxAge) {
+            this.host = host;
+            this.device = device;
+            this.reading = reading;
+            this.maxAge = maxAge;
+        }
+
+        protected void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = next = this;
+        }
+
+        protected void linkBefore(Entry head) {
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+    }
+}
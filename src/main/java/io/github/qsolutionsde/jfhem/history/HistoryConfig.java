@@ -0,0 +1,12 @@
+package io.github.qsolutionsde.jfhem.history;
+
+import lombok.Data;
+
+@Data
+public class HistoryConfig {
+    protected boolean enabled = true;
+    // values kept per (host, device, reading), 16 bytes each
+    protected int capacity = 1024;
+    protected int maxSeries = 10000;
+    protected boolean offHeap = false;
+}
@@ -0,0 +1,125 @@
+package io.github.qsolutionsde.jfhem.history;
+
+import io.github.qsolutionsde.jfhem.data.TimestampedDouble;
+import io.github.qsolutionsde.jfhem.data.TimestampedStatistics;
+import lombok.Getter;
+import lombok.Synchronized;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed size ring buffer of the latest numeric values of a reading, stored as primitive
+ * epoch millis and doubles, optionally off-heap.
+ */
+public class TimeSeries {
+    @Getter
+    protected final int capacity;
+
+    protected final LongBuffer timestamps;
+    protected final DoubleBuffer values;
+
+    // number of values ever added, the newest is at (added - 1) % capacity
+    protected long added = 0;
+
+    public TimeSeries(int capacity, boolean offHeap) {
+        this.capacity = capacity;
+        if (offHeap) {
+            timestamps = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+            values = ByteBuffer.allocateDirect(capacity * Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        } else {
+            timestamps = LongBuffer.wrap(new long[capacity]);
+            values = DoubleBuffer.wrap(new double[capacity]);
+        }
+    }
+
+    /**
+     * Adds a value, unless it is older than the newest one.
+     */
+    @Synchronized
+    public void add(long timestamp, double value) {
+        if (added > 0 && timestamp < timestamps.get(index(0)))
+            return;
+
+        final int i = (int) (added % capacity);
+        timestamps.put(i, timestamp);
+        values.put(i, value);
+        added++;
+    }
+
+    @Synchronized
+    public int size() {
+        return (int) Math.min(added, capacity);
+    }
+
+    /** @return the newest value, {@link TimestampedDouble#NULL} if empty */
+    @Synchronized
+    public TimestampedDouble last() {
+        if (added == 0)
+            return TimestampedDouble.NULL;
+        final int i = index(0);
+        return new TimestampedDouble(values.get(i), timestamps.get(i));
+    }
+
+    /** @return up to {@code n} newest values, oldest first */
+    @Synchronized
+    public List<TimestampedDouble> last(int n) {
+        final int k = Math.min(n, size());
+        final List<TimestampedDouble> l = new ArrayList<>(k);
+        for (int j = k - 1; j >= 0; j--) {
+            final int i = index(j);
+            l.add(new TimestampedDouble(values.get(i), timestamps.get(i)));
+        }
+        return l;
+    }
+
+    /** @return statistics of all values since {@code from} epoch millis */
+    @Synchronized
+    public TimestampedStatistics statistics(long from) {
+        final TimestampedStatistics s = new TimestampedStatistics();
+        final int size = size();
+        for (int j = 0; j < size; j++) {
+            final int i = index(j);
+            final long t = timestamps.get(i);
+            if (t < from)
+                break;
+            s.accept(values.get(i), t);
+        }
+        return s;
+    }
+
+    /** @return change per second between the oldest and the newest value since {@code from}, {@code NaN} if not enough values */
+    @Synchronized
+    public double rateOfChange(long from) {
+        final int size = size();
+        if (size < 2)
+            return Double.NaN;
+
+        final int newest = index(0);
+        int oldest = -1;
+        for (int j = 1; j < size; j++) {
+            final int i = index(j);
+            if (timestamps.get(i) < from)
+                break;
+            oldest = i;
+        }
+
+        if (oldest < 0)
+            return Double.NaN;
+
+        final long millis = timestamps.get(newest) - timestamps.get(oldest);
+        if (millis <= 0)
+            return Double.NaN;
+
+        return (values.get(newest) - values.get(oldest)) * 1000d / millis;
+    }
+
+    // buffer index of the j-th newest value
+    protected int index(int j) {
+        return (int) ((added - 1 - j) % capacity);
+    }
+}
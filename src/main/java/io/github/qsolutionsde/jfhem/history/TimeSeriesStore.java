@@ -0,0 +1,79 @@
+package io.github.qsolutionsde.jfhem.history;
+
+import io.github.qsolutionsde.jfhem.FHEMEventListener;
+import io.github.qsolutionsde.jfhem.data.NumberParser;
+import io.github.qsolutionsde.jfhem.data.TimestampClock;
+import io.github.qsolutionsde.jfhem.data.TimestampedStatistics;
+import io.github.qsolutionsde.jfhem.telnet.FHEMTelnetConnection;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a {@link TimeSeries} of the numeric values per (host, device, reading) received from the telnet connections.
+ *
+ * Memory is bounded by {@code maxSeries * capacity * 16} bytes; readings beyond {@code maxSeries} are not recorded.
+ */
+@Slf4j
+public class TimeSeriesStore implements FHEMEventListener {
+    @Getter
+    protected final HistoryConfig config;
+
+    protected final Map<String, TimeSeries> series = new ConcurrentHashMap<>();
+
+    public TimeSeriesStore(HistoryConfig config, List<FHEMTelnetConnection> cs) {
+        this.config = config;
+        for (FHEMTelnetConnection c : cs)
+            c.addListener(this);
+    }
+
+    protected static String key(String host, String device, String reading) {
+        return host + ":" + device + ":" + reading;
+    }
+
+    @Override
+    public void event(String host, String deviceType, String device, String reading, String value) {
+        record(host, device, reading, value, TimestampClock.millis());
+    }
+
+    @Override
+    public void event(long timestamp, String host, String deviceType, String device, String reading, String value) {
+        record(host, device, reading, value, timestamp);
+    }
+
+    public void record(String host, String device, String reading, String value, long timestamp) {
+        final double d = NumberParser.parseDouble(value);
+        if (Double.isNaN(d) || Double.isInfinite(d))
+            return;
+
+        final String k = key(host, device, reading);
+        TimeSeries s = series.get(k);
+        if (s == null) {
+            if (series.size() >= config.getMaxSeries()) {
+                log.debug("History full, not recording {}", k);
+                return;
+            }
+            s = series.computeIfAbsent(k, x -> new TimeSeries(config.getCapacity(), config.isOffHeap()));
+        }
+        s.add(timestamp, d);
+    }
+
+    /** @return the series of a reading, {@code null} if nothing numeric has been received */
+    public TimeSeries get(String host, String device, String reading) {
+        return series.get(key(host, device, reading));
+    }
+
+    public TimestampedStatistics statistics(String host, String device, String reading, Duration window) {
+        final TimeSeries s = get(host, device, reading);
+        return s == null ? new TimestampedStatistics() : s.statistics(TimestampClock.millis() - window.toMillis());
+    }
+
+    public double rateOfChange(String host, String device, String reading, Duration window) {
+        final TimeSeries s = get(host, device, reading);
+        return s == null ? Double.NaN : s.rateOfChange(TimestampClock.millis() - window.toMillis());
+    }
+}
@@ -0,0 +1,33 @@
+package io.github.qsolutionsde.jfhem.history;
+
+import io.github.qsolutionsde.jfhem.data.TimestampedDouble;
+import io.github.qsolutionsde.jfhem.data.TimestampedStatistics;
+import lombok.Value;
+
+/**
+ * Summary of a {@link TimeSeries} over a time window, {@code null} where undefined.
+ */
+@Value
+public class TimeSeriesWindow {
+    long count;
+    Double min;
+    Double max;
+    Double mean;
+    // change per second
+    Double rate;
+    TimestampedDouble last;
+
+    public static TimeSeriesWindow of(TimeSeries s, long from) {
+        if (s == null)
+            return new TimeSeriesWindow(0, null, null, null, null, null);
+
+        final TimestampedStatistics st = s.statistics(from);
+        final double rate = s.rateOfChange(from);
+        return new TimeSeriesWindow(st.count(),
+                st.isEmpty() ? null : st.min(),
+                st.isEmpty() ? null : st.max(),
+                st.isEmpty() ? null : st.mean(),
+                Double.isNaN(rate) ? null : rate,
+                st.isEmpty() ? null : s.last());
+    }
+}
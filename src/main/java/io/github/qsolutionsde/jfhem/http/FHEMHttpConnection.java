@@ -1,24 +1,34 @@
 package io.github.qsolutionsde.jfhem.http;
 
+import io.github.qsolutionsde.jfhem.CommandMetrics;
+import io.github.qsolutionsde.jfhem.ConnectionState;
 import io.github.qsolutionsde.jfhem.FHEMCommandExecutor;
+import io.github.qsolutionsde.jfhem.Jsonlist2;
+import io.github.qsolutionsde.jfhem.Threads;
 import io.github.qsolutionsde.jfhem.data.TimestampedValue;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
-import java.time.Instant;
-import java.time.LocalDateTime;
+import java.time.Duration;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
@@ -35,17 +45,38 @@ import org.apache.http.util.EntityUtils;
  * Represents a connection to an FHEM instance using HTTP (no longpoll).
  *
  * Supports CSRF tokens
+ *
+ * The host is probed in the background after creation, its {@link ConnectionState} follows the outcome of
+ * the requests since.
  */
 
 @Slf4j
 public class FHEMHttpConnection implements FHEMCommandExecutor {
+    @Getter
     protected final FHEMWebConfig.FHEMHostConfig config;
 
     protected final CloseableHttpClient client;
 
+    protected final ThreadPoolExecutor commandExecutor;
+
+    protected final CommandMetrics metrics;
+
+    protected final ZoneId zone;
+
+    @Getter
+    protected volatile ConnectionState state = ConnectionState.CONNECTING;
+    @Getter
+    protected volatile String lastError;
+
     public FHEMHttpConnection(FHEMWebConfig.FHEMHostConfig config)
+    {
+        this(config, Metrics.globalRegistry);
+    }
+
+    public FHEMHttpConnection(FHEMWebConfig.FHEMHostConfig config, MeterRegistry registry)
     {
         this.config = config;
+        this.zone = ZoneId.of(config.getTimezone());
 
         final int timeout = 5;
         RequestConfig rc = RequestConfig.custom()
@@ -61,14 +92,39 @@ public class FHEMHttpConnection implements FHEMCommandExecutor {
 
             client = HttpClientBuilder.create()
                     .setDefaultRequestConfig(rc)
+                    .setMaxConnPerRoute(config.getCommandConcurrency() + 2)
                     .setDefaultCredentialsProvider(provider)
                     .build();
         } else
-            client = HttpClientBuilder.create().setDefaultRequestConfig(rc).build();
+            client = HttpClientBuilder.create()
+                    .setDefaultRequestConfig(rc)
+                    .setMaxConnPerRoute(config.getCommandConcurrency() + 2)
+                    .build();
+
+        commandExecutor = new ThreadPoolExecutor(config.getCommandConcurrency(), config.getCommandConcurrency(),
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(config.getCommandQueueSize()),
+                Threads.factory("fhem-http-" + getHost() + "-"));
+        commandExecutor.allowCoreThreadTimeOut(true);
+
+        metrics = new CommandMetrics(registry, "http", getHost());
+        registry.gauge("fhem.command.queue", Tags.of("host", getHost()),
+                commandExecutor, e -> e.getQueue().size());
+        CaffeineCacheMetrics.monitor(registry, devices, "fhem.http.readings", "host", getHost());
+        commandExecutor.execute(this::getCsrfToken);
+    }
+
+    protected void ready() {
+        state = ConnectionState.READY;
+    }
+
+    protected void degraded(String error) {
+        lastError = error;
+        state = ConnectionState.DEGRADED;
     }
 
     protected LoadingCache<String, Map<String, TimestampedValue<String>>> devices = Caffeine.newBuilder()
             .expireAfterWrite(2, TimeUnit.MINUTES)
+            .recordStats()
             .build(this::getReadingsDirect);
 
     public TimestampedValue<String> getReading(String device, String reading) {
@@ -87,8 +143,53 @@ public class FHEMHttpConnection implements FHEMCommandExecutor {
         return devices.get(device);
     }
 
+    /**
+     * Returns the readings of a device, served from the cache if they were fetched from FHEM within {@code maxAge},
+     * otherwise refreshed from FHEM. Readings unchanged in FHEM for longer are served like recent ones.
+     */
+    public Map<String, TimestampedValue<String>> getReadings(String device, Duration maxAge) {
+        Map<String, TimestampedValue<String>> m = devices.getIfPresent(device);
+        if (m != null && isFresh(device, maxAge))
+            return m;
+
+        return refresh(device);
+    }
+
+    /**
+     * Returns a single reading, served from the cache if it was updated or fetched from FHEM within
+     * {@code maxAge}, otherwise the device is refreshed from FHEM.
+     */
+    public TimestampedValue<String> getReading(String device, String reading, Duration maxAge) {
+        Map<String, TimestampedValue<String>> m = devices.getIfPresent(device);
+        if (m != null) {
+            TimestampedValue<String> t = m.get(reading);
+            if (t != null && (!t.isExpired(maxAge) || isFresh(device, maxAge)))
+                return t;
+        }
+
+        m = refresh(device);
+        if (m != null)
+            return m.get(reading);
+        else
+            return null;
+    }
+
+    protected boolean isFresh(String device, Duration maxAge) {
+        return devices.policy().expireAfterWrite()
+                .flatMap(p -> p.ageOf(device))
+                .map(age -> age.compareTo(maxAge) <= 0)
+                .orElse(false);
+    }
+
+    protected Map<String, TimestampedValue<String>> refresh(String device) {
+        Map<String, TimestampedValue<String>> m = getReadingsDirect(device);
+        if (m != null)
+            devices.put(device, m);
+        return m;
+    }
+
     public Map<String, Map<String, TimestampedValue<String>>> getReadingsDirect(List<String> devices) {
-        Map<String, Map<String, TimestampedValue<String>>> rl = new HashMap<>();
+        Map<String, Map<String, TimestampedValue<String>>> rl;
 
         HttpGet method = new HttpGet(config.getUrl() + "?cmd=jsonlist2+"
                                 + String.join("|", devices) + "&XHR=1"
@@ -97,37 +198,16 @@ public class FHEMHttpConnection implements FHEMCommandExecutor {
         try (final CloseableHttpResponse rsp = client.execute(method)) {
             final int statusCode = rsp.getStatusLine().getStatusCode();
             if (statusCode == HttpStatus.SC_OK) {
-                ObjectMapper m = new ObjectMapper();
-                JsonNode o = m.readTree(rsp.getEntity().getContent());
-                for (JsonNode res : o.withArray("Results")) {
-                    Map<String, TimestampedValue<String>> rs = new HashMap<>();
-                    rl.put(res.get("Name").asText(), rs);
-                    if (res.has("Readings")) {
-                        for (Iterator<String> f = res.get("Readings").fieldNames(); f.hasNext(); ) {
-                            String reading = f.next();
-                            String value = res.get("Readings").get(reading).get("Value").asText();
-                            String date = res.get("Readings").get(reading).get("Time").asText();
-                            Instant lastUpdate = null;
-                            try {
-                                lastUpdate = LocalDateTime.parse(date,
-                                        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-                                        .atZone(ZoneId.of(config.getTimezone()))
-                                        .toInstant();
-                            } catch (Exception e) {
-                                log.error("Error parsing last update date", e);
-                            }
-                            log.debug("Reading found: {}:{} = {} at {}", res.get("Name"), reading, value, (lastUpdate == null) ? "null" : lastUpdate.toString());
-                            rs.put(reading, new TimestampedValue<>(value, lastUpdate));
-                        }
-                    } else {
-                        log.error("No readings {} {}", method.getURI(), (new ObjectMapper()).writeValueAsString(res));
-                    }
-                }
+                rl = parseJsonlist2(rsp.getEntity().getContent());
+                ready();
             } else {
                 log.error("Status code from {}: {} {}", method.getURI(), statusCode, rsp.getStatusLine().getReasonPhrase());
+                degraded("status " + statusCode);
+                rl = new HashMap<>();
             }
         } catch (IOException | NullPointerException e) {
             log.error("Error getting readings from {}", method.getURI(), e);
+            degraded(e.toString());
             return Collections.emptyMap();
         }
 
@@ -135,6 +215,13 @@ public class FHEMHttpConnection implements FHEMCommandExecutor {
         return rl;
     }
 
+    /**
+     * Reads the readings per device from a {@code jsonlist2} response.
+     */
+    public Map<String, Map<String, TimestampedValue<String>>> parseJsonlist2(InputStream in) throws IOException {
+        return Jsonlist2.parse(in, zone);
+    }
+
     protected static final String CSRF_HEADER = "X-FHEM-csrfToken";
 
     protected String getCsrfToken() {
@@ -144,6 +231,7 @@ public class FHEMHttpConnection implements FHEMCommandExecutor {
             // otherwise connection leak
             EntityUtils.consumeQuietly(rsp.getEntity());
             if (statusCode == HttpStatus.SC_OK) {
+                ready();
                 if (rsp.containsHeader(CSRF_HEADER))
                     return rsp.getFirstHeader(CSRF_HEADER).getValue();
                 else {
@@ -151,8 +239,10 @@ public class FHEMHttpConnection implements FHEMCommandExecutor {
                     return "";
                 }
             }
+            degraded("status " + statusCode);
         } catch (IOException | NullPointerException e) {
             log.error("Error getting CSRF token from {}", method.getURI(), e);
+            degraded(e.toString());
             return "";
         }
 
@@ -164,15 +254,30 @@ public class FHEMHttpConnection implements FHEMCommandExecutor {
         return URI.create(config.getUrl()).getHost();
     }
 
+    /**
+     * Executes a command on the bounded per-host command pool.
+     *
+     * @throws RejectedExecutionException if the pool and its queue are saturated
+     */
+    public CompletableFuture<String> executeAsync(String command) {
+        return CompletableFuture.supplyAsync(() -> execute(command), commandExecutor);
+    }
+
     @Override
     public String execute(String command) {
+        final long start = System.nanoTime();
         HttpGet method = new HttpGet(config.getUrl() + "?cmd=" + URLEncoder.encode(command, Charset.defaultCharset())
                 + "&XHR=1"
                 + (config.isUseCsrf() ? "&fwcsrf=" + getCsrfToken() : ""));
         try (final CloseableHttpResponse rsp = client.execute(method)) {
-            return EntityUtils.toString(rsp.getEntity(), "UTF-8");
+            String r = EntityUtils.toString(rsp.getEntity(), "UTF-8");
+            metrics.record(command, start, true);
+            ready();
+            return r;
         } catch (IOException | NullPointerException e) {
             log.error("Error getting readings from {}", method.getURI(), e);
+            metrics.record(command, start, false);
+            degraded(e.toString());
             return null;
         }
 
@@ -23,6 +23,10 @@ public class FHEMWebConfig {
         protected String password = null;
         protected boolean useCsrf = false;
         protected String timezone = "Europe/Berlin";
+        // bulkhead for commands: concurrent requests, waiting requests and timeout in ms
+        protected int commandConcurrency = 2;
+        protected int commandQueueSize = 16;
+        protected long commandTimeout = 10000;
 
         public FHEMHostConfig url(String host) {
             setUrl(host);
@@ -0,0 +1,455 @@
+package io.github.qsolutionsde.jfhem.journal;
+
+import io.github.qsolutionsde.jfhem.FHEMEventListener;
+import io.github.qsolutionsde.jfhem.data.NumberParser;
+import io.github.qsolutionsde.jfhem.data.TimestampClock;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of all events, written to memory-mapped segment files.
+ *
+ * A record is {@code kind, key id, epoch millis, value}, where the key id refers to (host, device type, device, reading)
+ * in the shared {@code keys.dat} dictionary and the value is stored as long, double or UTF-8 string. Each segment
+ * header holds a sparse time index of record positions. Segments roll when full; old segments are deleted by
+ * total size and age. On startup, appending continues behind the last record of the newest segment.
+ *
+ * Records are in append order, not in timestamp order: resynchronized readings and events with
+ * {@code inform timer} are journaled with their older timestamps. So the header holds the newest timestamp of the
+ * segment, and each index entry the newest timestamp of the records before its position.
+ */
+@Slf4j
+public class Journal implements FHEMEventListener, Closeable {
+    protected static final int MAGIC = 0x4A464A32;
+    protected static final String SUFFIX = ".journal";
+    protected static final String KEYS = "keys.dat";
+
+    protected static final byte END = 0;
+    protected static final byte LONG = 1;
+    protected static final byte DOUBLE = 2;
+    protected static final byte STRING = 3;
+
+    // kind, key id, timestamp
+    protected static final int RECORD_HEADER = 1 + 4 + 8;
+
+    // magic, data start, index entries, reserved, newest timestamp
+    protected static final int HEADER = 4 + 4 + 4 + 4 + 8;
+    // newest timestamp before position, position
+    protected static final int INDEX_ENTRY = 8 + 4;
+
+    protected static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    protected final JournalConfig config;
+    protected final Path directory;
+
+    protected final Map<String, Integer> keyIds = new ConcurrentHashMap<>();
+    protected final List<String[]> keys = new CopyOnWriteArrayList<>();
+    protected DataOutputStream keyFile;
+
+    // guards appends and close, which write to disk
+    protected final ReentrantLock lock = new ReentrantLock();
+    protected Segment active;
+    protected boolean closed = false;
+
+    public Journal(JournalConfig config) throws IOException {
+        this.config = config;
+        this.directory = Paths.get(config.getDirectory());
+        Files.createDirectories(directory);
+        loadKeys();
+
+        List<Path> segments = segments();
+        if (segments.isEmpty())
+            active = new Segment(1, true);
+        else {
+            final Path last = segments.get(segments.size() - 1);
+            final boolean reopen = reopenable(last);
+            active = new Segment(reopen ? sequence(last) : sequence(last) + 1, !reopen);
+            if (reopen)
+                log.info("Continuing journal segment {} at {}", last, active.position);
+        }
+        applyRetention();
+        log.info("Journal in {}, {} segments, {} keys", directory.toAbsolutePath(), segments.size(), keys.size());
+    }
+
+    @Override
+    public void event(String host, String deviceType, String device, String reading, String value) {
+        append(TimestampClock.millis(), host, deviceType, device, reading, value);
+    }
+
+    @Override
+    public void event(long timestamp, String host, String deviceType, String device, String reading, String value) {
+        append(timestamp, host, deviceType, device, reading, value);
+    }
+
+    public void append(long timestamp, String host, String deviceType, String device, String reading, String value) {
+        lock.lock();
+        try {
+            if (closed)
+                return;
+
+            try {
+                final int id = keyId(host, deviceType, device, reading);
+
+                byte kind;
+                long bits = 0;
+                byte[] string = null;
+                long l;
+                double d;
+                if (NumberParser.isLong(value, false)
+                        && Long.toString(l = NumberParser.parseLong(value, false, 0)).equals(value)) {
+                    kind = LONG;
+                    bits = l;
+                } else if (!Double.isNaN(d = NumberParser.parseDouble(value, false)) && Double.toString(d).equals(value)) {
+                    kind = DOUBLE;
+                    bits = Double.doubleToRawLongBits(d);
+                } else {
+                    kind = STRING;
+                    string = value.getBytes(StandardCharsets.UTF_8);
+                }
+
+                final int size = RECORD_HEADER + (string == null ? 8 : 4 + string.length);
+                if (size + 1 > config.getSegmentSize() - active.dataStart) {
+                    log.warn("Event too large for journal {}:{}:{}", host, device, reading);
+                    return;
+                }
+                // keep room for the end marker
+                if (active.position + size + 1 > config.getSegmentSize())
+                    roll();
+
+                active.write(kind, id, timestamp, bits, string, size);
+            } catch (IOException e) {
+                log.error("Error writing journal", e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Streams all events since {@code from} to {@code l}, in the order they were appended, which is not their
+     * timestamp order.
+     */
+    public void replay(Instant from, JournalListener l) throws IOException {
+        final long f = from.toEpochMilli();
+        for (Path p : segments()) {
+            final long newest = newestTimestamp(p);
+            if (newest != NO_TIMESTAMP && newest < f)
+                continue;
+            replay(p, f, l);
+        }
+    }
+
+    protected void replay(Path p, long from, JournalListener l) throws IOException {
+        final ByteBuffer b;
+        try (FileChannel c = FileChannel.open(p, StandardOpenOption.READ)) {
+            b = c.map(FileChannel.MapMode.READ_ONLY, 0, c.size());
+        }
+
+        if (b.limit() < HEADER || b.getInt(0) != MAGIC) {
+            log.warn("Not a journal segment: {}", p);
+            return;
+        }
+
+        int position = b.getInt(4);
+        // the newest timestamps of the index do not decrease, skip to the last one before from
+        for (int i = b.getInt(8) - 1; i >= 0; i--) {
+            if (b.getLong(HEADER + i * INDEX_ENTRY) < from) {
+                position = b.getInt(HEADER + i * INDEX_ENTRY + 8);
+                break;
+            }
+        }
+
+        while (position + RECORD_HEADER <= b.limit()) {
+            final byte kind = b.get(position);
+            if (kind == END)
+                break;
+
+            final int id = b.getInt(position + 1);
+            final long timestamp = b.getLong(position + 5);
+            final int v = position + RECORD_HEADER;
+
+            String value;
+            switch (kind) {
+                case LONG:
+                    value = Long.toString(b.getLong(v));
+                    position = v + 8;
+                    break;
+                case DOUBLE:
+                    value = Double.toString(Double.longBitsToDouble(b.getLong(v)));
+                    position = v + 8;
+                    break;
+                case STRING:
+                    final int length = b.getInt(v);
+                    if (length < 0 || v + 4 + length > b.limit()) {
+                        log.warn("Corrupt record in {} at {}", p, position);
+                        return;
+                    }
+                    final byte[] bytes = new byte[length];
+                    b.duplicate().position(v + 4).get(bytes);
+                    value = new String(bytes, StandardCharsets.UTF_8);
+                    position = v + 4 + length;
+                    break;
+                default:
+                    log.warn("Corrupt record in {} at {}", p, position);
+                    return;
+            }
+
+            if (timestamp >= from && id < keys.size()) {
+                final String[] k = keys.get(id);
+                l.event(Instant.ofEpochMilli(timestamp), k[0], k[1], k[2], k[3], value);
+            }
+        }
+    }
+
+    protected int keyId(String host, String deviceType, String device, String reading) throws IOException {
+        final String k = host + '\u0000' + deviceType + '\u0000' + device + '\u0000' + reading;
+        Integer id = keyIds.get(k);
+        if (id == null) {
+            id = keys.size();
+            String[] key = { host, deviceType, device, reading };
+            for (String s : key)
+                keyFile.writeUTF(s);
+            keyFile.flush();
+            keys.add(key);
+            keyIds.put(k, id);
+        }
+        return id;
+    }
+
+    protected void loadKeys() throws IOException {
+        final Path p = directory.resolve(KEYS);
+        if (Files.exists(p)) {
+            try (RandomAccessFile f = new RandomAccessFile(p.toFile(), "rw")) {
+                long valid = 0;
+                try {
+                    while (f.getFilePointer() < f.length()) {
+                        String[] key = { f.readUTF(), f.readUTF(), f.readUTF(), f.readUTF() };
+                        keyIds.put(String.join("\u0000", key), keys.size());
+                        keys.add(key);
+                        valid = f.getFilePointer();
+                    }
+                } catch (EOFException e) {
+                    log.warn("Truncating incomplete key in {}", p);
+                    f.setLength(valid);
+                }
+            }
+        }
+        keyFile = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(p, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    protected void roll() throws IOException {
+        active.buffer.force();
+        active = new Segment(active.sequence + 1, true);
+        applyRetention();
+    }
+
+    /**
+     * Deletes the oldest segments while the journal exceeds its size or their events are older than the retention age.
+     */
+    protected void applyRetention() throws IOException {
+        final List<Path> segments = segments();
+        long total = 0;
+        for (Path p : segments)
+            total += Files.size(p);
+
+        final long oldest = System.currentTimeMillis() - config.getRetentionAge().toMillis();
+        for (int i = 0; i < segments.size() - 1; i++) {
+            final Path p = segments.get(i);
+            if (p.equals(active.path))
+                break;
+
+            final long newest = newestTimestamp(p);
+            if (total > config.getRetentionSize() || (newest != NO_TIMESTAMP && newest < oldest)) {
+                total -= Files.size(p);
+                Files.delete(p);
+                log.info("Deleted journal segment {}", p);
+            } else
+                break;
+        }
+    }
+
+    protected List<Path> segments() throws IOException {
+        try (Stream<Path> s = Files.list(directory)) {
+            return s.filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    protected Path path(long sequence) {
+        return directory.resolve(String.format("%020d%s", sequence, SUFFIX));
+    }
+
+    protected static long sequence(Path p) {
+        final String n = p.getFileName().toString();
+        return Long.parseLong(n.substring(0, n.length() - SUFFIX.length()));
+    }
+
+    /**
+     * @return true if appending can continue in the segment, it was written with the same size and index interval
+     */
+    protected boolean reopenable(Path p) throws IOException {
+        if (Files.size(p) != config.getSegmentSize())
+            return false;
+        try (FileChannel c = FileChannel.open(p, StandardOpenOption.READ)) {
+            final ByteBuffer b = ByteBuffer.allocate(HEADER);
+            c.read(b, 0);
+            return b.getInt(0) == MAGIC && b.getInt(4) == dataStart();
+        }
+    }
+
+    protected int dataStart() {
+        return (HEADER + maxIndexEntries() * INDEX_ENTRY + 7) & ~7;
+    }
+
+    protected int maxIndexEntries() {
+        return config.getSegmentSize() / config.getIndexInterval() + 1;
+    }
+
+    /** @return the newest timestamp of the segment, {@link #NO_TIMESTAMP} if empty or not known */
+    protected static long newestTimestamp(Path p) throws IOException {
+        try (FileChannel c = FileChannel.open(p, StandardOpenOption.READ)) {
+            final ByteBuffer b = ByteBuffer.allocate(HEADER);
+            c.read(b, 0);
+            return b.getInt(0) == MAGIC ? b.getLong(16) : NO_TIMESTAMP;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+            active.buffer.force();
+            keyFile.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected class Segment {
+        protected final long sequence;
+        protected final Path path;
+        protected final MappedByteBuffer buffer;
+        protected final int dataStart;
+        protected final int maxIndexEntries;
+
+        protected int position;
+        protected int indexEntries = 0;
+        protected int nextIndex;
+        protected long newestTimestamp = NO_TIMESTAMP;
+
+        /**
+         * @param create true to create a new segment, false to continue the existing one
+         */
+        protected Segment(long sequence, boolean create) throws IOException {
+            this.sequence = sequence;
+            this.path = path(sequence);
+
+            maxIndexEntries = maxIndexEntries();
+            dataStart = dataStart();
+
+            try (FileChannel c = create
+                    ? FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = c.map(FileChannel.MapMode.READ_WRITE, 0, config.getSegmentSize());
+            }
+
+            if (create) {
+                buffer.putInt(4, dataStart);
+                buffer.putInt(8, 0);
+                buffer.putLong(16, NO_TIMESTAMP);
+                buffer.putInt(0, MAGIC);
+
+                position = dataStart;
+                nextIndex = dataStart;
+            } else {
+                indexEntries = buffer.getInt(8);
+                newestTimestamp = buffer.getLong(16);
+                position = end();
+                nextIndex = indexEntries == 0 ? dataStart
+                        : buffer.getInt(HEADER + (indexEntries - 1) * INDEX_ENTRY + 8) + config.getIndexInterval();
+            }
+        }
+
+        /**
+         * @return the position behind the last complete record, everything behind is cleared as a record written
+         * partly before a crash would be read as continuation of the next one
+         */
+        protected int end() {
+            int p = dataStart;
+            while (p + RECORD_HEADER <= buffer.limit()) {
+                final byte kind = buffer.get(p);
+                final int size;
+                if (kind == LONG || kind == DOUBLE)
+                    size = RECORD_HEADER + 8;
+                else if (kind == STRING && p + RECORD_HEADER + 4 <= buffer.limit() && buffer.getInt(p + RECORD_HEADER) >= 0)
+                    size = RECORD_HEADER + 4 + buffer.getInt(p + RECORD_HEADER);
+                else
+                    break;
+                if (size > buffer.limit() - p)
+                    break;
+                p += size;
+            }
+
+            int i = p;
+            for (; i < buffer.limit() && (i & 7) != 0; i++)
+                buffer.put(i, END);
+            for (; i + 8 <= buffer.limit(); i += 8)
+                if (buffer.getLong(i) != 0)
+                    buffer.putLong(i, 0);
+            for (; i < buffer.limit(); i++)
+                buffer.put(i, END);
+            return p;
+        }
+
+        protected void write(byte kind, int id, long timestamp, long bits, byte[] string, int size) {
+            final int p = position;
+
+            if (p >= nextIndex && indexEntries < maxIndexEntries) {
+                buffer.putLong(HEADER + indexEntries * INDEX_ENTRY, newestTimestamp);
+                buffer.putInt(HEADER + indexEntries * INDEX_ENTRY + 8, p);
+                buffer.putInt(8, ++indexEntries);
+                nextIndex = p + config.getIndexInterval();
+            }
+
+            buffer.putInt(p + 1, id);
+            buffer.putLong(p + 5, timestamp);
+            if (string == null)
+                buffer.putLong(p + RECORD_HEADER, bits);
+            else {
+                buffer.putInt(p + RECORD_HEADER, string.length);
+                buffer.duplicate().position(p + RECORD_HEADER + 4).put(string);
+            }
+            // the kind marks the record complete for readers
+            buffer.put(p, kind);
+
+            if (timestamp > newestTimestamp) {
+                newestTimestamp = timestamp;
+                buffer.putLong(16, timestamp);
+            }
+
+            position = p + size;
+        }
+    }
+}
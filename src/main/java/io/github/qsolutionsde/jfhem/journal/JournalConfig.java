@@ -0,0 +1,17 @@
+package io.github.qsolutionsde.jfhem.journal;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+@Data
+public class JournalConfig {
+    protected boolean enabled = false;
+    protected String directory = "journal";
+    // bytes per segment file
+    protected int segmentSize = 64 * 1024 * 1024;
+    // bytes of events between two entries of the time index
+    protected int indexInterval = 64 * 1024;
+    protected long retentionSize = 1024L * 1024 * 1024;
+    protected Duration retentionAge = Duration.ofDays(7);
+}
@@ -0,0 +1,8 @@
+package io.github.qsolutionsde.jfhem.journal;
+
+import java.time.Instant;
+
+@FunctionalInterface
+public interface JournalListener {
+    void event(Instant timestamp, String host, String deviceType, String device, String reading, String value);
+}
@@ -6,10 +6,16 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/fhem")
@@ -20,35 +26,116 @@ public class FHEMRestController {
         cs.forEach(c -> hosts.put(c.getHost(),c));
     }
 
+    /**
+     * Returns all readings of a device. The newest reading determines Last-Modified, together with a hash of
+     * the readings the ETag, so unchanged devices are answered with 304 without serializing the readings.
+     *
+     * With {@code maxAge} (ISO-8601, e.g. {@code PT30S}) the readings are refreshed from FHEM
+     * if they were fetched before that duration.
+     */
     @GetMapping(path="/{host}/{device}")
-    public Map<String,TimestampedValue<String>> getDeviceReadings(@PathVariable("host") String host, @PathVariable("device") String device) {
+    public Map<String,TimestampedValue<String>> getDeviceReadings(@PathVariable("host") String host,
+                                                                  @PathVariable("device") String device,
+                                                                  @RequestParam(name = "maxAge", required = false) Duration maxAge,
+                                                                  WebRequest request) {
         if (!hosts.containsKey(host))
             throw new NotFoundException();
 
-        return hosts.get(host).getReadings(device);
+        Map<String,TimestampedValue<String>> readings = maxAge == null ?
+                hosts.get(host).getReadings(device) :
+                hosts.get(host).getReadings(device, maxAge);
+        if (readings == null)
+            return null;
+
+        Instant lastUpdate = TimestampedValue.newest(readings.values());
+        if (lastUpdate != null && request.checkNotModified(etag(readings, lastUpdate), lastUpdate.toEpochMilli()))
+            return null;
+
+        return readings;
+    }
+
+    @GetMapping(path="/{host}/{device}/{reading}")
+    public TimestampedValue<String> getReading(@PathVariable("host") String host,
+                                               @PathVariable("device") String device,
+                                               @PathVariable("reading") String reading,
+                                               @RequestParam(name = "maxAge", required = false) Duration maxAge) {
+        if (!hosts.containsKey(host))
+            throw new NotFoundException();
+
+        TimestampedValue<String> value = maxAge == null ?
+                hosts.get(host).getReading(device, reading) :
+                hosts.get(host).getReading(device, reading, maxAge);
+        if (value == null)
+            throw new NotFoundException();
+
+        return value;
+    }
+
+    /**
+     * FHEM times have seconds only, so names and values of the readings are hashed into the tag as well.
+     */
+    protected static String etag(Map<String,TimestampedValue<String>> readings, Instant lastUpdate) {
+        long h = 0;
+        // independent of the order of the readings
+        for (Map.Entry<String,TimestampedValue<String>> e : readings.entrySet())
+            h += mix(e.getKey().hashCode() * 31L + Objects.hashCode(e.getValue().value()));
+        return "\"" + Long.toHexString(lastUpdate.toEpochMilli()) + "-" + Integer.toHexString(readings.size())
+                + "-" + Long.toHexString(h) + "\"";
+    }
+
+    // finalizer of MurmurHash3
+    protected static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
     }
 
     @PostMapping(path="/{host}/{device}/{reading}")
-    public String executeCommand(@PathVariable("host") String host,
-                                 @PathVariable("device") String device,
-                                 @PathVariable(name = "reading", required = false) String reading,
-                                 HttpEntity<String> httpEntity) {
+    public DeferredResult<String> executeCommand(@PathVariable("host") String host,
+                                                 @PathVariable("device") String device,
+                                                 @PathVariable(name = "reading", required = false) String reading,
+                                                 HttpEntity<String> httpEntity) {
         if (!hosts.containsKey(host))
             throw new NotFoundException();
 
         String value = httpEntity.getBody();
 
-        return hosts.get(host).execute("set " + device + (reading == null ? "" : " " + reading) + " " + value);
+        return execute(hosts.get(host), "set " + device + (reading == null ? "" : " " + reading) + " " + value);
     }
 
     @PutMapping(path="/{host}/{device}/{reading}")
-    public String setReading(@PathVariable("host") String host, @PathVariable("device") String device, @PathVariable("reading") String reading, HttpEntity<String> httpEntity ) {
+    public DeferredResult<String> setReading(@PathVariable("host") String host, @PathVariable("device") String device, @PathVariable("reading") String reading, HttpEntity<String> httpEntity ) {
         if (!hosts.containsKey(host))
             throw new NotFoundException();
 
         String value = httpEntity.getBody();
 
-        return hosts.get(host).execute("setreading " + device + (reading == null ? "" : " " + reading) + " " + value);
+        return execute(hosts.get(host), "setreading " + device + (reading == null ? "" : " " + reading) + " " + value);
+    }
+
+    /**
+     * Runs the command on the host's bounded command pool, so slow hosts neither block servlet threads
+     * nor take more than their share of threads. Saturation answers 503, timeouts 504.
+     */
+    protected DeferredResult<String> execute(FHEMHttpConnection c, String command) {
+        final DeferredResult<String> result = new DeferredResult<>(c.getConfig().getCommandTimeout());
+        result.onTimeout(() -> result.setErrorResult(new GatewayTimeoutException()));
+
+        try {
+            c.executeAsync(command).whenComplete((r, e) -> {
+                if (e != null)
+                    result.setErrorResult(e);
+                else
+                    result.setResult(r);
+            });
+        } catch (RejectedExecutionException e) {
+            result.setErrorResult(new ServiceUnavailableException());
+        }
+
+        return result;
     }
 
     @ResponseStatus(HttpStatus.NOT_FOUND)
@@ -57,4 +144,10 @@ public class FHEMRestController {
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public class BadRequestException extends RuntimeException {}
 
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public class ServiceUnavailableException extends RuntimeException {}
+
+    @ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+    public class GatewayTimeoutException extends RuntimeException {}
+
 }
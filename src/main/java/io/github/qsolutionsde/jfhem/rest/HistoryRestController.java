@@ -0,0 +1,61 @@
+package io.github.qsolutionsde.jfhem.rest;
+
+import io.github.qsolutionsde.jfhem.data.TimestampClock;
+import io.github.qsolutionsde.jfhem.data.TimestampedDouble;
+import io.github.qsolutionsde.jfhem.history.TimeSeries;
+import io.github.qsolutionsde.jfhem.history.TimeSeriesStore;
+import io.github.qsolutionsde.jfhem.history.TimeSeriesWindow;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Windowed queries on the recent history of numeric readings received via telnet.
+ */
+@RestController
+@RequestMapping("/history")
+public class HistoryRestController {
+    protected final TimeSeriesStore store;
+
+    public HistoryRestController(TimeSeriesStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @param window ISO-8601 duration, e.g. {@code PT15M}
+     */
+    @GetMapping(path="/{host}/{device}/{reading}")
+    public TimeSeriesWindow getWindow(@PathVariable("host") String host,
+                                      @PathVariable("device") String device,
+                                      @PathVariable("reading") String reading,
+                                      @RequestParam(name = "window", defaultValue = "PT15M") Duration window) {
+        TimeSeries s = store.get(host, device, reading);
+        if (s == null)
+            throw new NotFoundException();
+
+        return TimeSeriesWindow.of(s, TimestampClock.millis() - window.toMillis());
+    }
+
+    @GetMapping(path="/{host}/{device}/{reading}/last")
+    public List<TimestampedDouble> getLast(@PathVariable("host") String host,
+                                           @PathVariable("device") String device,
+                                           @PathVariable("reading") String reading,
+                                           @RequestParam(name = "n", defaultValue = "10") int n) {
+        if (n < 0)
+            throw new BadRequestException();
+
+        TimeSeries s = store.get(host, device, reading);
+        if (s == null)
+            throw new NotFoundException();
+
+        return s.last(n);
+    }
+
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public class NotFoundException extends RuntimeException {}
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public class BadRequestException extends RuntimeException {}
+}
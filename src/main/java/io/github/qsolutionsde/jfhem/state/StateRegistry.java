@@ -0,0 +1,74 @@
+package io.github.qsolutionsde.jfhem.state;
+
+import io.github.qsolutionsde.jfhem.FHEMEventListener;
+import io.github.qsolutionsde.jfhem.data.TimestampClock;
+import io.github.qsolutionsde.jfhem.data.TimestampedValue;
+import io.github.qsolutionsde.jfhem.telnet.FHEMTelnetConnection;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest value of every reading received from the telnet connections, per host and device.
+ *
+ * Updates are applied newest-wins, so replayed and live events may arrive in any order.
+ */
+public class StateRegistry implements FHEMEventListener {
+
+    protected final Map<String, Map<String, DeviceState>> hosts = new ConcurrentHashMap<>();
+
+    public StateRegistry(List<FHEMTelnetConnection> cs) {
+        for (FHEMTelnetConnection c : cs)
+            c.addListener(this);
+    }
+
+    @Override
+    public void event(String host, String deviceType, String device, String reading, String value) {
+        event(TimestampClock.millis(), host, deviceType, device, reading, value);
+    }
+
+    @Override
+    public void event(long timestamp, String host, String deviceType, String device, String reading, String value) {
+        update(host, deviceType, device, reading, new TimestampedValue<>(value, Instant.ofEpochMilli(timestamp)));
+    }
+
+    public void update(String host, String deviceType, String device, String reading, TimestampedValue<String> value) {
+        final DeviceState d = hosts.computeIfAbsent(host, h -> new ConcurrentHashMap<>())
+                .computeIfAbsent(device, x -> new DeviceState(deviceType));
+        d.readings.merge(reading, value, (o, n) -> n.lastUpdate().isBefore(o.lastUpdate()) ? o : n);
+    }
+
+    public Set<String> getHosts() {
+        return Collections.unmodifiableSet(hosts.keySet());
+    }
+
+    /** @return the devices of a host, empty if unknown */
+    public Map<String, DeviceState> getDevices(String host) {
+        return Collections.unmodifiableMap(hosts.getOrDefault(host, Collections.emptyMap()));
+    }
+
+    /** @return the readings of a device, {@code null} if unknown */
+    public Map<String, TimestampedValue<String>> getReadings(String host, String device) {
+        final DeviceState d = hosts.getOrDefault(host, Collections.emptyMap()).get(device);
+        return d == null ? null : Collections.unmodifiableMap(d.readings);
+    }
+
+    public static class DeviceState {
+        @Getter
+        protected final String deviceType;
+        protected final Map<String, TimestampedValue<String>> readings = new ConcurrentHashMap<>();
+
+        protected DeviceState(String deviceType) {
+            this.deviceType = deviceType;
+        }
+
+        public Map<String, TimestampedValue<String>> getReadings() {
+            return Collections.unmodifiableMap(readings);
+        }
+    }
+}
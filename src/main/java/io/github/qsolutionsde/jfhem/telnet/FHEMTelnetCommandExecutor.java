@@ -1,53 +1,74 @@
 package io.github.qsolutionsde.jfhem.telnet;
 
+import io.github.qsolutionsde.jfhem.CommandMetrics;
 import io.github.qsolutionsde.jfhem.FHEMCommandExecutor;
-import lombok.RequiredArgsConstructor;
-import lombok.Synchronized;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.net.telnet.TelnetClient;
 
 import java.io.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Slf4j
-@RequiredArgsConstructor
 public class FHEMTelnetCommandExecutor implements FHEMCommandExecutor {
 
     protected final FHEMTelnetConfig.FHEMTelnetHostConfig config;
     protected final TelnetClient telnet = new TelnetClient();
+    protected final CommandMetrics metrics;
+    // one command at a time; not a monitor, a virtual thread blocking in it would pin its carrier
+    protected final ReentrantLock lock = new ReentrantLock();
+
+    public FHEMTelnetCommandExecutor(FHEMTelnetConfig.FHEMTelnetHostConfig config) {
+        this(config, Metrics.globalRegistry);
+    }
+
+    public FHEMTelnetCommandExecutor(FHEMTelnetConfig.FHEMTelnetHostConfig config, MeterRegistry registry) {
+        this.config = config;
+        this.metrics = new CommandMetrics(registry, "telnet", config.getHost());
+        telnet.setConnectTimeout(config.getConnectTimeout());
+    }
 
     @Override
     public String getHost() {
         return config.getHost();
     }
 
-    @Synchronized
     @Override
     public String execute(String cmd) {
+        lock.lock();
         try {
-            log.debug("Connecting");
-            telnet.connect(config.getHost(),  config.getPort());
-            log.debug("Connected to telnet");
+            final long start = System.nanoTime();
+            try {
+                log.debug("Connecting");
+                telnet.connect(config.getHost(),  config.getPort());
+                log.debug("Connected to telnet");
 
-            PrintWriter w = new PrintWriter(new OutputStreamWriter(telnet.getOutputStream()));
-            if (config.getPassword() != null) {
-                w.print(config.getPassword() + "\r\n");
+                PrintWriter w = new PrintWriter(new OutputStreamWriter(telnet.getOutputStream()));
+                if (config.getPassword() != null) {
+                    w.print(config.getPassword() + "\r\n");
+                    w.flush();
+                }
+
+                w.print(cmd + "\r\n");
                 w.flush();
+                log.debug("Sent command {}",cmd);
+
+                BufferedReader reader = new BufferedReader(new InputStreamReader(telnet.getInputStream()));
+                String line = reader.readLine();
+                reader.close();
+                telnet.disconnect();
+                metrics.record(cmd, start, true);
+                return line;
+            } catch (IOException e) {
+                log.error("Error processing reply",e);
             }
 
-            w.print(cmd + "\r\n");
-            w.flush();
-            log.debug("Sent command {}",cmd);
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(telnet.getInputStream()));
-            String line = reader.readLine();
-            reader.close();
-            telnet.disconnect();
-            return line;
-        } catch (IOException e) {
-            log.error("Error processing reply",e);
+            metrics.record(cmd, start, false);
+            return null;
+        } finally {
+            lock.unlock();
         }
-
-        return null;
     }
 
 }
@@ -22,6 +22,23 @@ public class FHEMTelnetConfig {
         @Getter @Setter protected String host;
         @Getter @Setter protected int port = 7072;
         @Getter @Setter protected String password = null;
+        @Getter @Setter protected String timezone = "Europe/Berlin";
+        // regexp of "inform on <regexp>", FHEM only sends events of matching devices or "<device>:<event>"
+        @Getter @Setter protected String inform = null;
+        // "inform timer": FHEM prefixes events with their time, in the timezone above, with milliseconds if the
+        // global attribute mseclog is set; otherwise events are stamped when received
+        @Getter @Setter protected boolean informTimer = false;
+        // supervision, all in ms: connect timeout, reconnect backoff, heartbeat after idle interval
+        // and timeout of the heartbeat, 0 disables heartbeats
+        @Getter @Setter protected int connectTimeout = 10000;
+        @Getter @Setter protected long reconnectDelay = 1000;
+        @Getter @Setter protected long maxReconnectDelay = 60000;
+        @Getter @Setter protected long heartbeatInterval = 30000;
+        @Getter @Setter protected long heartbeatTimeout = 10000;
+        // ms to wait for the output of jsonlist2, which takes a while for many devices
+        @Getter @Setter protected int readTimeout = 60000;
+        // fetch jsonlist2 after a reconnect and emit the readings updated while disconnected
+        @Getter @Setter protected boolean resync = true;
 
         public FHEMTelnetHostConfig host(String host) {
             setHost(host);
@@ -1,32 +1,108 @@
 package io.github.qsolutionsde.jfhem.telnet;
 
+import io.github.qsolutionsde.jfhem.ConnectionState;
 import io.github.qsolutionsde.jfhem.FHEMEventListener;
+import io.github.qsolutionsde.jfhem.Jsonlist2;
+import io.github.qsolutionsde.jfhem.Subscription;
+import io.github.qsolutionsde.jfhem.Subscriptions;
+import io.github.qsolutionsde.jfhem.Symbols;
+import io.github.qsolutionsde.jfhem.Threads;
+import io.github.qsolutionsde.jfhem.data.TimestampClock;
+import io.github.qsolutionsde.jfhem.data.TimestampFormat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import lombok.Getter;
-import lombok.Synchronized;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.net.telnet.TelnetClient;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Retryable;
 
 import java.io.*;
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 
+/**
+ * Receives the events of an FHEM host via telnet {@code inform on} and dispatches them to the listeners.
+ *
+ * A supervisor thread keeps the connection up: it reconnects with jittered exponential backoff, sends a
+ * heartbeat command when the link has been idle and reconnects if that is not answered, so half-open links are
+ * detected. After a reconnect, readings updated while disconnected are fetched with {@code jsonlist2} and
+ * dispatched like events.
+ *
+ * With {@code inform timer}, listeners get the time FHEM generated an event, otherwise the time it was received.
+ *
+ * Connecting never blocks the caller, so an unreachable host does not delay the others or the startup; its
+ * {@link ConnectionState} tells whether events are received.
+ */
 @Slf4j
-public class FHEMTelnetConnection {
-    public static void main(String[] args) {
+public class FHEMTelnetConnection implements Closeable {
+    public static void main(String[] args) throws InterruptedException {
         for (String h : args)
             new FHEMTelnetConnection(h);
+        // the connections run on daemon threads
+        Thread.currentThread().join();
     }
 
-    protected final TelnetClient telnet;
-    protected final Executor executor;
+    // answered by FHEM with a single word, which the line parser ignores
+    protected static final String HEARTBEAT = "{\"jfhem-heartbeat\"}";
+
+    protected static final String GLOBAL = "global";
+    protected static final String STATE = Symbols.intern("state");
+
+    protected static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "telnet-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // client of the current connection, a new one per connection
+    protected volatile TelnetClient telnet;
+    protected final ExecutorService executor;
 
     @Getter
     protected final FHEMTelnetConfig.FHEMTelnetHostConfig host;
+    // canonical host name passed to the listeners
+    protected final String hostName;
+    protected final ZoneId zone;
+    // offset of the zone in the hour of the last inform timer prefix, read by the supervisor only
+    protected long offsetHour = Long.MIN_VALUE;
+    protected long offsetMillis;
+
+    protected final Counter linesRead;
+    protected final Counter eventsParsed;
+    protected final Counter eventsRejected;
+    protected final Counter listenerErrors;
+    protected final Timer parseTime;
+    protected final Timer dispatchTime;
+    protected final Counter reconnects;
+    protected final Counter heartbeatFailures;
+    protected final Counter resyncEvents;
+    protected final Counter resyncFailures;
+
+    protected volatile boolean running = false;
+    // incremented by every start and stop, ends supervisors of earlier starts
+    protected volatile int generation = 0;
+    protected volatile boolean connected = false;
+    @Getter
+    protected volatile ConnectionState state = ConnectionState.STANDBY;
+    // reason the connection was lost or could not be opened
+    @Getter
+    protected volatile String lastError;
+    // System.nanoTime() of the last line read
+    protected volatile long lastRead;
+    protected volatile boolean heartbeatSent;
+    // no liveness checks while resynchronizing or after dropping the connection
+    protected volatile boolean checking;
+    // epoch millis of the last line of the previous connection, 0 before the first
+    protected volatile long disconnectedAt = 0;
+    protected volatile PrintWriter writer;
+    protected final ReentrantLock writeLock = new ReentrantLock();
+    protected ScheduledFuture<?> heartbeat;
 
     public FHEMTelnetConnection(String host) {
         this(new FHEMTelnetConfig.FHEMTelnetHostConfig().host(host));
@@ -37,135 +113,479 @@ public class FHEMTelnetConnection {
     }
 
     public FHEMTelnetConnection(FHEMTelnetConfig.FHEMTelnetHostConfig config) {
+        this(config, Metrics.globalRegistry);
+    }
+
+    public FHEMTelnetConnection(FHEMTelnetConfig.FHEMTelnetHostConfig config, MeterRegistry registry) {
+        this(config, registry, true);
+    }
+
+    /**
+     * @param start whether to connect right away, otherwise on {@link #start()}
+     */
+    public FHEMTelnetConnection(FHEMTelnetConfig.FHEMTelnetHostConfig config, MeterRegistry registry, boolean start) {
         this.host = config;
-        telnet = new TelnetClient();
-        executor = Executors.newFixedThreadPool(4);
-        connect();
+        this.hostName = Symbols.intern(config.getHost());
+        this.zone = ZoneId.of(config.getTimezone());
+        linesRead = registry.counter("fhem.telnet.lines", "host", config.getHost());
+        eventsParsed = registry.counter("fhem.telnet.events", "host", config.getHost());
+        eventsRejected = registry.counter("fhem.telnet.events.rejected", "host", config.getHost());
+        listenerErrors = registry.counter("fhem.telnet.listener.errors", "host", config.getHost());
+        parseTime = registry.timer("fhem.telnet.parse", "host", config.getHost());
+        dispatchTime = registry.timer("fhem.telnet.dispatch", "host", config.getHost());
+        reconnects = registry.counter("fhem.telnet.reconnects", "host", config.getHost());
+        heartbeatFailures = registry.counter("fhem.telnet.heartbeat.failures", "host", config.getHost());
+        resyncEvents = registry.counter("fhem.telnet.resync.events", "host", config.getHost());
+        resyncFailures = registry.counter("fhem.telnet.resync.failures", "host", config.getHost());
+        registry.gauge("fhem.telnet.connected", Tags.of("host", config.getHost()),
+                this, c -> c.connected ? 1 : 0);
+        executor = Threads.executor("telnet-" + config.getHost() + "-");
+        if (start)
+            connect();
     }
 
-    protected List<FHEMEventListener> listeners = new LinkedList<>();
+    protected volatile Subscriptions subscriptions = Subscriptions.EMPTY;
+
+    // serializes dispatch, listeners may block on disk or the network
+    protected final ReentrantLock lock = new ReentrantLock();
 
-    @Synchronized
     public void addListener(FHEMEventListener l) {
-        listeners.add(l);
-        log.info("Registered listener {}",l);
+        addListener(l, Subscription.ALL);
     }
 
-    @Synchronized
-    public void removeListener(FHEMEventListener l) {
-        listeners.remove(l);
+    /**
+     * Registers {@code l} for the events matching {@code s}, only FHEM events passing the inform filter of the host
+     * arrive at all.
+     */
+    public synchronized void addListener(FHEMEventListener l, Subscription s) {
+        subscriptions = subscriptions.with(l, s);
+        log.info("Registered listener {} for {}", l, s);
     }
 
-    @Retryable(
-            value = { IOException.class },
-            maxAttempts = 100,
-            backoff = @Backoff(delay = 5000, maxDelay = 60000, multiplier = 1.5))
+    /** Removes all subscriptions of {@code l}. */
+    public synchronized void removeListener(FHEMEventListener l) {
+        subscriptions = subscriptions.without(l);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts receiving events after {@link #stop()} or without start in the constructor, readings updated since
+     * the last connection are resynchronized.
+     */
+    public synchronized void start() {
+        if (!running)
+            connect();
+    }
+
+    /**
+     * Starts receiving events and resynchronizes the readings updated since {@code since}, e.g. when taking
+     * over a host from another gateway.
+     *
+     * @param since epoch millis, 0 for no resync
+     */
+    public synchronized void start(long since) {
+        if (!running) {
+            disconnectedAt = since;
+            connect();
+        }
+    }
+
+    /**
+     * Disconnects until the next {@link #start()}, listeners stay registered.
+     */
+    public synchronized void stop() {
+        if (!running)
+            return;
+        running = false;
+        generation++;
+        if (heartbeat != null)
+            heartbeat.cancel(false);
+        checking = false;
+        if (connected) {
+            connected = false;
+            disconnectedAt = TimestampClock.millis() - (System.nanoTime() - lastRead) / 1_000_000;
+        }
+        disconnect();
+        state = ConnectionState.STANDBY;
+        log.info("Stopped receiving events from {}", host.getHost());
+    }
+
+    /**
+     * Starts the supervisor, which connects and reads until {@link #stop()} or {@link #close()}.
+     */
     protected void connect() {
-        try
-        {
-            log.debug("Connecting");
-            telnet.connect(host.getHost(),  host.getPort());
-            log.debug("Connected to telnet");
-            PrintWriter w = new PrintWriter(new OutputStreamWriter(telnet.getOutputStream()));
-            if (host.getPassword() != null) {
-                w.print(host.getPassword() + "\r\n");
-                w.flush();
+        running = true;
+        state = ConnectionState.CONNECTING;
+        final int g = ++generation;
+        executor.execute(() -> supervise(g));
+        if (host.getHeartbeatInterval() > 0) {
+            final long period = Math.max(100, Math.min(host.getHeartbeatInterval(), host.getHeartbeatTimeout()) / 2);
+            heartbeat = watchdog.scheduleWithFixedDelay(this::checkLiveness, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    protected void supervise(int g) {
+        int failures = 0;
+        while (running && generation == g) {
+            TelnetClient c = null;
+            try {
+                c = open(g);
+                state = ConnectionState.READY;
+                failures = 0;
+                if (disconnectedAt > 0 && host.isResync())
+                    resync(disconnectedAt);
+                lastRead = System.nanoTime();
+                checking = true;
+                read(c);
+                if (generation == g) {
+                    log.warn("Telnet connection to {} closed", host.getHost());
+                    if (state == ConnectionState.READY)
+                        degraded("connection closed");
+                }
+            } catch (IOException | RuntimeException e) {
+                // closing the connection in stop() makes reads fail
+                if (generation == g) {
+                    log.warn("Telnet connection to {} failed: {}", host.getHost(), e.toString());
+                    // keeps the reason of the watchdog for dropping it
+                    if (c == null || state == ConnectionState.READY)
+                        degraded(e.toString());
+                }
+            } finally {
+                if (generation == g) {
+                    checking = false;
+                    if (connected) {
+                        connected = false;
+                        disconnectedAt = TimestampClock.millis() - (System.nanoTime() - lastRead) / 1_000_000;
+                    }
+                } else if (c != null && c == telnet)
+                    connected = false;
+                if (c != null)
+                    disconnect(c);
             }
 
-            w.print("inform on\r\n");
-            w.flush();
+            if (!running || generation != g)
+                return;
+            final long delay = backoff(failures++);
+            log.info("Reconnecting to {} in {} ms", host.getHost(), delay);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    protected void degraded(String error) {
+        lastError = error;
+        state = ConnectionState.DEGRADED;
+    }
+
+    /** @return reconnect delay, exponential in the failures, jittered to half to full */
+    protected long backoff(int failures) {
+        final long d = Math.min(host.getMaxReconnectDelay(), host.getReconnectDelay() << Math.min(failures, 20));
+        return d / 2 + ThreadLocalRandom.current().nextLong(d / 2 + 1);
+    }
+
+    /**
+     * Connects for the supervisor of generation {@code g}. The shared connection state is only set while that
+     * generation is current, so a supervisor of an earlier start cannot take over the connection of a later one.
+     */
+    protected TelnetClient open(int g) throws IOException {
+        log.debug("Connecting");
+        final TelnetClient c = new TelnetClient();
+        // read in the supervisor thread, so closing the socket reliably ends the read
+        c.setReaderThread(false);
+        c.setConnectTimeout(host.getConnectTimeout());
+        // stop() closes the connection while connecting
+        synchronized (this) {
+            if (generation != g)
+                throw new IOException("Stopped before connecting");
+            telnet = c;
+        }
+        try {
+            c.connect(host.getHost(), host.getPort());
+            log.debug("Connected to telnet");
+            final PrintWriter w = new PrintWriter(new OutputStreamWriter(c.getOutputStream()));
+            if (host.getPassword() != null)
+                send(w, host.getPassword());
+            final String inform = host.isInformTimer() ? "inform timer" : "inform on";
+            send(w, host.getInform() == null ? inform : inform + " " + host.getInform());
             log.debug("Sent inform");
-            executor.execute(new TelnetReader());
+            synchronized (this) {
+                if (generation != g)
+                    throw new IOException("Stopped while connecting");
+                writer = w;
+                lastRead = System.nanoTime();
+                heartbeatSent = false;
+                connected = true;
+            }
+        } catch (IOException | RuntimeException e) {
+            disconnect(c);
+            throw e;
         }
-        catch (IOException e) {
-            log.error("Error connecting via Telnet", e);
+
+        if (disconnectedAt > 0)
+            reconnects.increment();
+        log.info("Receiving events from {}", host.getHost());
+        return c;
+    }
+
+    protected void read(TelnetClient c) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(c.getInputStream()));
+        String line = reader.readLine();
+        while (line != null) {
+            lastRead = System.nanoTime();
+            heartbeatSent = false;
+            processLine(line);
+            line = reader.readLine();
         }
     }
 
-    protected void processLine(String line) {
-        log.debug(line);
+    /** @return false if the command could not be written */
+    protected boolean send(String command) {
+        return send(writer, command);
+    }
 
-        if (line.contains("<html"))
-            return;
+    protected boolean send(PrintWriter w, String command) {
+        writeLock.lock();
+        try {
+            w.print(command + "\r\n");
+            w.flush();
+            return !w.checkError();
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-        String[] lineparts = line.trim().split(" ");
+    protected void disconnect() {
+        final TelnetClient c = telnet;
+        if (c != null)
+            disconnect(c);
+    }
 
-        if (lineparts.length > 1) {
-            String deviceType = lineparts[0];
-            String device = lineparts[1];
-            String reading;
-            String value;
+    protected void disconnect(TelnetClient c) {
+        try {
+            if (c.isConnected())
+                c.disconnect();
+        } catch (IOException | RuntimeException e) {
+            // the watchdog may disconnect concurrently
+            log.debug("Error disconnecting from {}", host.getHost(), e);
+        }
+    }
 
-            if ("global".equals(device) && lineparts.length > 3) {
-                device = lineparts[3];
+    /**
+     * Sends a heartbeat after {@code heartbeatInterval} without data, drops the connection if it remains
+     * unanswered for {@code heartbeatTimeout}.
+     */
+    protected void checkLiveness() {
+        if (!checking)
+            return;
+        final long idle = (System.nanoTime() - lastRead) / 1_000_000;
+        if (heartbeatSent && idle >= host.getHeartbeatInterval() + host.getHeartbeatTimeout()) {
+            log.warn("No data from {} for {} ms, reconnecting", host.getHost(), idle);
+            heartbeatFailures.increment();
+            degraded("no data for " + idle + " ms");
+            checking = false;
+            disconnect();
+        } else if (!heartbeatSent && idle >= host.getHeartbeatInterval()) {
+            heartbeatSent = true;
+            if (!send(HEARTBEAT)) {
+                log.warn("Error sending heartbeat to {}, reconnecting", host.getHost());
+                degraded("error sending heartbeat");
+                checking = false;
+                disconnect();
             }
+        }
+    }
 
-            if (lineparts.length == 3) {
-                String s = lineparts[2].trim();
-                if (s.endsWith(":")) {
-                    reading = s.substring(0, s.length() - 1);
-                    value = "";
-                    process(deviceType, device, reading, value);
-                } else {
-                    reading = "state";
-                    value = lineparts[2];
-                    process(deviceType, device, reading, value);
+    /**
+     * Dispatches the readings updated since {@code since}, fetched with {@code jsonlist2} over a separate
+     * connection. Readings changed since are also in the inform stream behind, so the final state is right
+     * even for readings changed during the resync. Failures are logged, the inform stream is read anyway.
+     */
+    protected void resync(long since) {
+        final long start = System.nanoTime();
+        // FHEM times have seconds
+        final long from = Math.floorDiv(since, 1000) * 1000;
+        final int[] n = { 0 };
+        try {
+            jsonlist2(new FHEMEventListener() {
+                @Override
+                public void event(String host, String deviceType, String device, String reading, String value) {
                 }
-            } else if (lineparts.length > 3) {
-                String s = lineparts[2].trim();
-                reading = s;
-                if (reading.endsWith(":")) {
-                    reading = s.substring(0, s.length() - 1);
+
+                @Override
+                public void event(long timestamp, String host, String deviceType, String device, String reading,
+                                  String value) {
+                    if (timestamp >= from) {
+                        process(timestamp, false, deviceType, device, reading, value);
+                        n[0]++;
+                    }
                 }
-                value = String.join(" ", Arrays.copyOfRange(lineparts, 3, lineparts.length));
-                process(deviceType, device, reading, value);
+            });
+            resyncEvents.increment(n[0]);
+            log.info("Resynchronized {} readings of {} in {} ms", n[0], host.getHost(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            resyncFailures.increment();
+            log.warn("Error resynchronizing {}: {}", host.getHost(), e.toString());
+        }
+    }
+
+    /**
+     * Fetches all readings with {@code jsonlist2} over a separate connection and passes those passing the inform
+     * filter to {@code l} only, at their last update. Readings without valid time are skipped.
+     */
+    public void jsonlist2(FHEMEventListener l) throws IOException {
+        final TelnetClient c = new TelnetClient();
+        c.setReaderThread(false);
+        try {
+            c.setConnectTimeout(host.getConnectTimeout());
+            c.connect(host.getHost(), host.getPort());
+            c.setSoTimeout(host.getReadTimeout());
+            PrintWriter w = new PrintWriter(new OutputStreamWriter(c.getOutputStream()));
+            if (host.getPassword() != null)
+                w.print(host.getPassword() + "\r\n");
+            w.print("jsonlist2\r\nquit\r\n");
+            w.flush();
+
+            final byte[] b = c.getInputStream().readAllBytes();
+            int i = 0;
+            while (i < b.length && b[i] != '{')
+                i++;
+
+            final Pattern inform = host.getInform() == null ? null : Pattern.compile(host.getInform());
+            Jsonlist2.parse(new ByteArrayInputStream(b, i, b.length - i), zone,
+                    (device, type, readings) -> readings.forEach((r, v) -> {
+                        if (v.lastUpdate() != null && (inform == null || informed(inform, device, r, v.value())))
+                            l.event(v.lastUpdate().toEpochMilli(), host.getHost(), type == null ? "unknown" : type,
+                                    device, r, v.value());
+                    }));
+        } finally {
+            try {
+                if (c.isConnected())
+                    c.disconnect();
+            } catch (IOException e) {
+                log.debug("Error disconnecting", e);
             }
         }
     }
 
-    @Synchronized
-    private void process(String deviceType, String device, String reading, String value) {
-        log.debug("=> Type {}, Device {}, Reading {}, Value {}",deviceType,device,reading,value);
+    // the inform filter of FHEM matches the device name or "<device>:<event>"
+    protected static boolean informed(Pattern inform, String device, String reading, String value) {
+        return inform.matcher(device).find()
+                || inform.matcher(device + ":" + (STATE.equals(reading) ? value : reading + ": " + value)).find();
+    }
 
-        if (! Character.isAlphabetic(device.charAt(0))) {
-            log.warn("Illegal device {}|{}:{}={}", deviceType, device, reading, value);
+    /**
+     * Parses an inform line {@code <type> <device> <reading>: <value>}, {@code <type> <device> <state>} or
+     * {@code Global global <event> <device>}, prefixed by {@code yyyy-MM-dd HH:mm:ss[.SSS]} with
+     * {@code inform timer}. Names are taken from {@link Symbols} without copying known ones.
+     */
+    protected void processLine(String line) {
+        log.debug(line);
+        linesRead.increment();
+        final long start = System.nanoTime();
+
+        if (line.contains("<html"))
             return;
+
+        final String l = line.trim();
+        long timestamp = TimestampClock.millis();
+        boolean live = false;
+        int b = 0;
+        if (host.isInformTimer() && l.length() > 20 && l.charAt(4) == '-' && l.charAt(10) == ' ') {
+            final int t = l.indexOf(' ', 19);
+            final long local = t < 0 ? TimestampFormat.INVALID : TimestampFormat.parse(l, 0, t);
+            if (local != TimestampFormat.INVALID) {
+                timestamp = local - offset(local);
+                live = true;
+                b = t + 1;
+            }
         }
 
-        if (device.indexOf(':') > 0) {
-            log.warn("Illegal device {}|{}:{}={}", deviceType, device, reading, value);
+        final int s1 = l.indexOf(' ', b);
+        final int s2 = s1 < 0 ? -1 : l.indexOf(' ', s1 + 1);
+        if (s2 < 0)
             return;
+        final int s3 = l.indexOf(' ', s2 + 1);
+
+        final String deviceType = Symbols.intern(l, b, s1);
+        final String device;
+        if (s3 >= 0 && s2 - s1 - 1 == GLOBAL.length() && l.startsWith(GLOBAL, s1 + 1)) {
+            final int s4 = l.indexOf(' ', s3 + 1);
+            device = Symbols.intern(l, s3 + 1, s4 < 0 ? l.length() : s4);
+        } else
+            device = Symbols.intern(l, s1 + 1, s2);
+
+        final int end = s3 < 0 ? l.length() : s3;
+        final boolean colon = end > s2 + 1 && l.charAt(end - 1) == ':';
+        String reading;
+        String value;
+        if (s3 < 0 && !colon) {
+            reading = STATE;
+            value = l.substring(s2 + 1);
+        } else {
+            reading = Symbols.intern(l, s2 + 1, colon ? end - 1 : end);
+            value = s3 < 0 ? "" : l.substring(s3 + 1);
         }
+        parseTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        process(timestamp, live, deviceType, device, reading, value);
+    }
 
-        for (FHEMEventListener l : listeners) {
-            try {
-                l.event(host.getHost(), deviceType, device, reading, value);
-            } catch (Exception ex) {
-                log.error("Error notifying listener {}",l,ex);
-            }
+    /**
+     * @param local epoch millis of a local time of FHEM as if it were UTC
+     * @return offset of the timezone of the host at that time, looked up once per hour
+     */
+    protected long offset(long local) {
+        final long hour = Math.floorDiv(local, 3_600_000L);
+        if (hour != offsetHour) {
+            offsetMillis = zone.getRules()
+                    .getOffset(LocalDateTime.ofEpochSecond(hour * 3600, 0, ZoneOffset.UTC)).getTotalSeconds() * 1000L;
+            offsetHour = hour;
         }
+        return offsetMillis;
     }
 
-    protected class TelnetReader implements Runnable {
-        @Override
-        public void run() {
-            log.debug("Running");
-            try {
-                Reader r = new InputStreamReader(telnet.getInputStream());
-                BufferedReader reader = new BufferedReader(r);
-                String line = reader.readLine();
-                while (line != null) {
-                    processLine(line);
-                    line = reader.readLine();
-                }
-                reader.close();
-            } catch (IOException e) {
-                log.error("Error reading",e);
-                connect();
+    private void process(long timestamp, boolean live, String deviceType, String device, String reading, String value) {
+        lock.lock();
+        try {
+            log.debug("=> Type {}, Device {}, Reading {}, Value {}",deviceType,device,reading,value);
+
+            if (device.isEmpty() || ! Character.isAlphabetic(device.charAt(0))) {
+                log.warn("Illegal device {}|{}:{}={}", deviceType, device, reading, value);
+                eventsRejected.increment();
                 return;
             }
-            connect();
+
+            if (device.indexOf(':') > 0) {
+                log.warn("Illegal device {}|{}:{}={}", deviceType, device, reading, value);
+                eventsRejected.increment();
+                return;
+            }
+
+            eventsParsed.increment();
+            final long start = System.nanoTime();
+            for (FHEMEventListener l : subscriptions.listeners(deviceType, device, reading)) {
+                try {
+                    l.event(timestamp, live, hostName, deviceType, device, reading, value);
+                } catch (Exception ex) {
+                    listenerErrors.increment();
+                    log.error("Error notifying listener {}",l,ex);
+                }
+            }
+            dispatchTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } finally {
+            lock.unlock();
         }
     }
 
+    @Override
+    public void close() {
+        stop();
+        executor.shutdownNow();
+    }
 }